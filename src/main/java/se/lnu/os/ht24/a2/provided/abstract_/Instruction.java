@@ -1,4 +1,33 @@
 package se.lnu.os.ht24.a2.provided.abstract_;
 
+/**
+ * An instruction of a simulation. Its kind is a final opcode given by the subclass, so running an instruction is a
+ * switch on a field, the same for every kind of instruction, instead of a test of its class.
+ */
 public abstract class Instruction {
+
+    public static final int UNKNOWN = -1;
+    public static final int ALLOCATION = 0;
+    public static final int DEALLOCATION = 1;
+    public static final int COMPACTION = 2;
+
+    private final int opcode;
+
+    /**
+     * An instruction that a simulation does not know, it fails when it is run.
+     */
+    protected Instruction() {
+        this(UNKNOWN);
+    }
+
+    /**
+     * @param opcode is the kind of the instruction, one of the constants of this class.
+     */
+    protected Instruction(int opcode) {
+        this.opcode = opcode;
+    }
+
+    public final int getOpcode() {
+        return opcode;
+    }
 }
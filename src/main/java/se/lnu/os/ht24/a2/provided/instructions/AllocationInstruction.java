@@ -15,6 +15,7 @@ public class AllocationInstruction extends Instruction {
     private final int dimension;
 
     public AllocationInstruction(int processId, int dimension) {
+        super(ALLOCATION);
         this.processId = processId;
         this.dimension = dimension;
     }
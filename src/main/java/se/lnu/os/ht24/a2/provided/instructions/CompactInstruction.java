@@ -4,6 +4,10 @@ import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
 
 public class CompactInstruction extends Instruction {
 
+    public CompactInstruction() {
+        super(COMPACTION);
+    }
+
     @Override
     public String toString() {
         return "C";
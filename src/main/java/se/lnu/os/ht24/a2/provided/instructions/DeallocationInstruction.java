@@ -10,6 +10,7 @@ public class DeallocationInstruction extends Instruction {
     private final int processId;
 
     public DeallocationInstruction(int blockId) {
+        super(DEALLOCATION);
         this.processId = blockId;
     }
 
@@ -0,0 +1,31 @@
+package se.lnu.os.ht24.a2.required;
+
+/**
+ * The way a MemoryImpl stores its address space.
+ */
+public enum BackendType {
+    /**
+     * Allocated blocks and holes are kept as intervals ordered by address. The cost depends on the number of
+     * blocks, not on the size of the memory.
+     */
+    INTERVAL {
+        @Override
+        public String toString() { return "Interval"; }
+    },
+    /**
+     * The owner of every address is kept in a flat int array. Meant for memories up to a few million units,
+     * where a tight scan over the array is cheaper than following the intervals.
+     */
+    DENSE {
+        @Override
+        public String toString() { return "Dense"; }
+    },
+    /**
+     * Like DENSE, but the int cells are in a direct buffer outside of the heap, so the garbage collector does not
+     * see them. Meant for hundreds of millions of units with a small heap, up to Integer.MAX_VALUE units.
+     */
+    OFF_HEAP {
+        @Override
+        public String toString() { return "Off heap"; }
+    }
+}
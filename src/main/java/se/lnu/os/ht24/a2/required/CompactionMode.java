@@ -0,0 +1,22 @@
+package se.lnu.os.ht24.a2.required;
+
+/**
+ * When a SimulationInstanceImpl compacts its memory.
+ */
+public enum CompactionMode {
+    /**
+     * Only on a CompactInstruction, which compacts the whole memory.
+     */
+    MANUAL {
+        @Override
+        public String toString() { return "Manual"; }
+    },
+    /**
+     * Also when an allocation fails while there is enough free memory: only the blocks between the holes needed
+     * for the allocation are moved, then the allocation is tried again.
+     */
+    ON_DEMAND {
+        @Override
+        public String toString() { return "On demand"; }
+    }
+}
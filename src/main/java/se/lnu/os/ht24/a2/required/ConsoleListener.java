@@ -0,0 +1,21 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+import se.lnu.os.ht24.a2.provided.exceptions.InstructionException;
+
+/**
+ * Prints the errors of a memory and of a simulation on the standard output, like they used to be printed.
+ */
+public class ConsoleListener implements MemoryListener, SimulationListener {
+
+    @Override
+    public void freeFailed(int idBlock) {
+        System.out.println("Error : the block is not assigned");
+    }
+
+    @Override
+    public void failed(Instruction instruction, InstructionException exception) {
+        System.out.println("Failure on the instruction: " + instruction.toString()
+                + "The available memory left is :" + exception.getAllocatableMemoryAtException());
+    }
+}
@@ -0,0 +1,262 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.data.ProcessInterval;
+import se.lnu.os.ht24.a2.provided.data.StrategyType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Backend that keeps the owner of every address in flat int cells, on the heap, in a direct buffer or in a file.
+ * The free addresses are the ones marked free in a segment tree over a bitmap, their cells are never read, so
+ * freeing a block does not write its cells. The tree finds the first fit and the biggest hole without a scan, and
+ * the interval of every block is also indexed by its owner.
+ * Only the cells can be outside of the heap. The tree of the free runs stays on the heap, with one bit per address
+ * and three ints per word of 64 addresses, the words rounded up to a power of two: between 0.5 and 0.9 byte per
+ * address. The index of the blocks takes about 100 bytes per block. A memory of 2^31 units in a file still needs
+ * from 1 to 2 GB of heap.
+ */
+class DenseBackend implements MemoryBackend {
+
+    private final IntCells cells;
+    private final HashMap<Integer, ProcessInterval> intervals = new HashMap<Integer, ProcessInterval>();
+    private final FreeRunTree freeRuns;
+    // the number of free addresses, kept up to date by every allocation and release.
+    private int freeMemory;
+    private long fingerprint;
+
+    /**
+     * Set up an empty memory.
+     * @param cells are the cells of the owners, one per address.
+     */
+    DenseBackend(IntCells cells) {
+        int size = cells.length();
+        this.cells = cells;
+        this.freeRuns = new FreeRunTree(size);
+        this.freeMemory = size;
+    }
+
+    private DenseBackend(DenseBackend other) {
+        // the intervals can not be modified, the copies share them.
+        this.cells = other.cells.copy();
+        this.intervals.putAll(other.intervals);
+        this.freeRuns = other.freeRuns.copy();
+        this.freeMemory = other.freeMemory;
+        this.fingerprint = other.fingerprint;
+    }
+
+    @Override
+    public boolean place(int idBlock, long wideDimension, StrategyType strategy) {
+        if (wideDimension > cells.length()) {
+            return false;
+        }
+        int dimension = (int) wideDimension;
+        int chosenLow = -1;
+        if (strategy == StrategyType.FIRST_FIT) {
+            chosenLow = freeRuns.firstFit(dimension);
+        } else if (strategy == StrategyType.WORST_FIT) {
+            // the first run as long as the biggest hole is the biggest hole with the lowest address.
+            if (freeRuns.longest() >= dimension) {
+                chosenLow = freeRuns.firstFit(freeRuns.longest());
+            }
+        } else {
+            chosenLow = bestFit(dimension);
+        }
+        if (chosenLow < 0) {
+            return false;
+        }
+        // we set the beginning of the hole to taken.
+        cells.fill(chosenLow, chosenLow + dimension, idBlock);
+        freeRuns.occupy(chosenLow, chosenLow + dimension - 1);
+        freeMemory = freeMemory - dimension;
+        intervals.put(idBlock, new ProcessInterval(chosenLow, chosenLow + dimension - 1));
+        fingerprint = fingerprint ^ Fingerprint.block(idBlock, chosenLow, chosenLow + dimension - 1);
+        return true;
+    }
+
+    @Override
+    public void release(int idBlock) {
+        // the cells keep the old owner, the bitmap says they are free.
+        ProcessInterval block = intervals.remove(idBlock);
+        fingerprint = fingerprint ^ Fingerprint.block(idBlock, block.getLowAddress(), block.getHighAddress());
+        cells.release(block.getLowAddress(), block.getHighAddress() + 1);
+        freeRuns.free(block.getLowAddress(), block.getHighAddress());
+        freeMemory = freeMemory + block.getHighAddress() - block.getLowAddress() + 1;
+    }
+
+    @Override
+    public long compact(long wideLow, long wideHigh) {
+        int low = (int) wideLow;
+        int high = (int) wideHigh;
+        // the blocks are contiguous, so copying every taken address down keeps the blocks and their order.
+        // the holes are skipped through the bitmap and the blocks through their interval, no cell is scanned.
+        int moved = 0;
+        int next = low;
+        int address = freeRuns.nextTaken(low);
+        while (address <= high) {
+            int owner = cells.get(address);
+            ProcessInterval block = intervals.get(owner);
+            int dimension = block.getHighAddress() - block.getLowAddress() + 1;
+            if (next != address) {
+                cells.copyDown(address, next, dimension);
+                intervals.put(owner, new ProcessInterval(next, next + dimension - 1));
+                fingerprint = fingerprint ^ Fingerprint.block(owner, address, address + dimension - 1)
+                        ^ Fingerprint.block(owner, next, next + dimension - 1);
+                moved = moved + dimension;
+            }
+            next = next + dimension;
+            address = freeRuns.nextTaken(address + dimension);
+        }
+        if (next > low) {
+            freeRuns.occupy(low, next - 1);
+        }
+        if (next <= high) {
+            cells.release(next, high + 1);
+            freeRuns.free(next, high);
+        }
+        return moved;
+    }
+
+    @Override
+    public boolean containsProcess(int idBlock) {
+        return intervals.containsKey(idBlock);
+    }
+
+    @Override
+    public List<Integer> processes() {
+        return new ArrayList<Integer>(intervals.keySet());
+    }
+
+    @Override
+    public int processCount() {
+        return intervals.size();
+    }
+
+    @Override
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public long processSize(int idBlock) {
+        ProcessInterval block = intervals.get(idBlock);
+        if (block != null) {
+            return block.getHighAddress() - block.getLowAddress() + 1;
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public ProcessInterval getProcessInterval(int idBlock) {
+        return intervals.get(idBlock);
+    }
+
+    @Override
+    public WideProcessInterval getWideProcessInterval(int idBlock) {
+        ProcessInterval block = intervals.get(idBlock);
+        if (block != null) {
+            return new WideProcessInterval(block.getLowAddress(), block.getHighAddress());
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Set<Integer> neighboringProcesses(int idBlock) {
+        Set<Integer> neighbor = new HashSet<>();
+        ProcessInterval block = intervals.get(idBlock);
+        if (block.getLowAddress() > 0 && freeRuns.isFree(block.getLowAddress() - 1) == false) {
+            neighbor.add(cells.get(block.getLowAddress() - 1));
+        }
+        if (block.getHighAddress() < cells.length() - 1 && freeRuns.isFree(block.getHighAddress() + 1) == false) {
+            neighbor.add(cells.get(block.getHighAddress() + 1));
+        }
+        return neighbor;
+    }
+
+    @Override
+    public long freeMemory() {
+        return freeMemory;
+    }
+
+    @Override
+    public long biggestHole() {
+        return freeRuns.longest();
+    }
+
+    @Override
+    public long nextHole(long address) {
+        // the address is right after a hole, so the first free address from there starts a hole.
+        int low = freeRuns.nextFree((int) address);
+        if (low < cells.length()) {
+            return low;
+        }
+        return -1;
+    }
+
+    @Override
+    public long holeEnd(long low) {
+        return freeRuns.nextTaken((int) low) - 1;
+    }
+
+    @Override
+    public Set<ProcessInterval> freeSlots() {
+        Set<ProcessInterval> freeslots = new HashSet<>();
+        // jump from the start of a hole to its end in the bitmap of the free addresses, 64 addresses at a time.
+        int low = freeRuns.nextFree(0);
+        while (low < cells.length()) {
+            int high = freeRuns.nextTaken(low);
+            freeslots.add(new ProcessInterval(low, high - 1));
+            low = freeRuns.nextFree(high);
+        }
+        return freeslots;
+    }
+
+    @Override
+    public Set<WideProcessInterval> wideFreeSlots() {
+        Set<WideProcessInterval> freeslots = new HashSet<>();
+        for (ProcessInterval slot : freeSlots()) {
+            freeslots.add(new WideProcessInterval(slot.getLowAddress(), slot.getHighAddress()));
+        }
+        return freeslots;
+    }
+
+    @Override
+    public MemoryBackend copy() {
+        return new DenseBackend(this);
+    }
+
+    @Override
+    public void close() {
+        cells.close();
+    }
+
+    /**
+     * @param dimension is the dimension of the block.
+     * @return the lowest address of the smallest hole big enough, -1 if there is none.
+     */
+    private int bestFit(int dimension) {
+        int chosenLow = -1;
+        int chosenLength = 0;
+        // go through the holes by address, the comparison is strict so that the lowest address wins a tie.
+        int low = freeRuns.nextFree(0);
+        while (low < cells.length()) {
+            int high = freeRuns.nextTaken(low);
+            int length = high - low;
+            if (length == dimension) {
+                // no hole can fit better, and the next ones have a higher address.
+                return low;
+            }
+            if (length > dimension && (chosenLow < 0 || length < chosenLength)) {
+                chosenLow = low;
+                chosenLength = length;
+            }
+            low = freeRuns.nextFree(high);
+        }
+        return chosenLow;
+    }
+}
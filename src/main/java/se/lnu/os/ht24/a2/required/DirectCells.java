@@ -0,0 +1,55 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * The cells in direct buffers, outside of the heap. The garbage collector never scans them, so a memory of
+ * hundreds of millions of units runs with a small heap. The cells are split in chunks (see IntChunks), so there
+ * can be as many as an int can count.
+ */
+class DirectCells implements IntCells {
+
+    private final IntChunks cells;
+
+    /**
+     * @param length is the number of cells.
+     */
+    DirectCells(int length) {
+        IntBuffer[] chunks = new IntBuffer[IntChunks.chunks(length)];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            int cells = IntChunks.chunkLength(length, chunk);
+            chunks[chunk] = ByteBuffer.allocateDirect(cells * Integer.BYTES).order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+        }
+        this.cells = new IntChunks(length, chunks);
+    }
+
+    @Override
+    public int length() {
+        return cells.length();
+    }
+
+    @Override
+    public int get(int index) {
+        return cells.get(index);
+    }
+
+    @Override
+    public void fill(int from, int to, int value) {
+        cells.fill(from, to, value);
+    }
+
+    @Override
+    public void copyDown(int from, int to, int length) {
+        cells.copyDown(from, to, length);
+    }
+
+    @Override
+    public IntCells copy() {
+        DirectCells copy = new DirectCells(length());
+        cells.copyTo(copy.cells, 0, length());
+        return copy;
+    }
+}
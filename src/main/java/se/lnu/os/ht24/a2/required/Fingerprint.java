@@ -0,0 +1,31 @@
+package se.lnu.os.ht24.a2.required;
+
+/**
+ * Hash of the layout of a memory, kept up to date by the backends. The layout hash is the xor of the hash of every
+ * allocated block, so a block is added or removed with a single xor, whatever the backend.
+ */
+final class Fingerprint {
+
+    private Fingerprint() {
+    }
+
+    /**
+     * @param owner is the id of the block.
+     * @param low is the lowest address of the block.
+     * @param high is the highest address of the block.
+     * @return the hash of the block, to xor in the layout hash when it is allocated and again when it is freed.
+     */
+    static long block(int owner, long low, long high) {
+        long hash = mix(owner * 0x9E3779B97F4A7C15L + low);
+        return mix(hash + high);
+    }
+
+    /**
+     * The finalizer of SplitMix64, every bit of the input changes about half of the bits of the result.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,237 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree over an address space that answers "lowest address of a free run of at least n units".
+ * The addresses are packed 64 by 64 in the words of a bitmap (bit set = taken), every leaf of the tree is one
+ * word, and every node keeps the free run at the start of its span, the one at the end and the longest one.
+ */
+class FreeRunTree {
+
+    private static final int WORD = 64;
+
+    private final int size;
+    private final long[] taken;
+    // the leaves are at leaves + word, the children of a node are at 2 * node and 2 * node + 1.
+    private final int leaves;
+    private final int[] prefix;
+    private final int[] suffix;
+    private final int[] longest;
+
+    /**
+     * Set up a free address space.
+     * @param size is the number of addresses.
+     */
+    FreeRunTree(int size) {
+        this.size = size;
+        int words = (int) ((size + (long) WORD - 1) / WORD);
+        this.taken = new long[words];
+        int leaves = 1;
+        while (leaves < words) {
+            leaves = leaves * 2;
+        }
+        this.leaves = leaves;
+        this.prefix = new int[2 * leaves];
+        this.suffix = new int[2 * leaves];
+        this.longest = new int[2 * leaves];
+        // the addresses after the end of the memory are taken, so that no run goes past it.
+        if (size % WORD != 0) {
+            taken[words - 1] = -1L << (size % WORD);
+        }
+        for (int word = 0; word < words; word++) {
+            setLeaf(word);
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            merge(node, (long) WORD * (leaves / Integer.highestOneBit(node)) / 2);
+        }
+    }
+
+    private FreeRunTree(FreeRunTree other) {
+        this.size = other.size;
+        this.taken = other.taken.clone();
+        this.leaves = other.leaves;
+        this.prefix = other.prefix.clone();
+        this.suffix = other.suffix.clone();
+        this.longest = other.longest.clone();
+    }
+
+    /**
+     * @return a tree with the same free addresses, that changes independently of this one.
+     */
+    FreeRunTree copy() {
+        return new FreeRunTree(this);
+    }
+
+    /**
+     * @param address is an address of the memory.
+     * @return True if the address is free.
+     */
+    boolean isFree(int address) {
+        return (taken[address / WORD] & (1L << (address % WORD))) == 0;
+    }
+
+    /**
+     * @param from is an address of the memory.
+     * @return the first free address at or after from, size if there is none.
+     */
+    int nextFree(int from) {
+        return next(from, true);
+    }
+
+    /**
+     * @param from is an address of the memory.
+     * @return the first taken address at or after from, size if there is none.
+     */
+    int nextTaken(int from) {
+        return next(from, false);
+    }
+
+    /**
+     * Mark the addresses between low and high (included) as taken.
+     */
+    void occupy(int low, int high) {
+        set(low, high, true);
+    }
+
+    /**
+     * Mark the addresses between low and high (included) as free.
+     */
+    void free(int low, int high) {
+        set(low, high, false);
+    }
+
+    /**
+     * Mark every address as free.
+     */
+    void clear() {
+        if (taken.length == 0) {
+            return;
+        }
+        Arrays.fill(taken, 0L);
+        if (size % WORD != 0) {
+            taken[taken.length - 1] = -1L << (size % WORD);
+        }
+        update(0, taken.length - 1);
+    }
+
+    /**
+     * @return the dimension of the longest free run, 0 if the memory is full.
+     */
+    int longest() {
+        return longest[1];
+    }
+
+    /**
+     * @param dimension is the number of free addresses needed, at least 1.
+     * @return the lowest address where a free run of at least dimension units starts, -1 if there is none.
+     */
+    int firstFit(int dimension) {
+        if (longest[1] < dimension) {
+            return -1;
+        }
+        int node = 1;
+        long low = 0;
+        long span = (long) WORD * leaves;
+        while (node < leaves) {
+            span = span / 2;
+            int left = 2 * node;
+            int right = left + 1;
+            if (longest[left] >= dimension) {
+                node = left;
+            } else if (suffix[left] + prefix[right] >= dimension) {
+                // the run starts at the end of the left half and goes on in the right one.
+                return (int) (low + span - suffix[left]);
+            } else {
+                node = right;
+                low = low + span;
+            }
+        }
+        // the run is inside this word: keep the bits that start dimension free bits in a row.
+        long free = ~taken[node - leaves];
+        for (int i = 1; i < dimension; i++) {
+            free = free & (free >>> 1);
+        }
+        return (int) (low + Long.numberOfTrailingZeros(free));
+    }
+
+    private int next(int from, boolean free) {
+        // a whole word is skipped at a time, only the bits from the address on are kept in the first one.
+        int word = from / WORD;
+        long bits = 0;
+        if (word < taken.length) {
+            bits = (free ? ~taken[word] : taken[word]) & (-1L << (from % WORD));
+        }
+        while (bits == 0) {
+            word++;
+            if (word >= taken.length) {
+                return size;
+            }
+            bits = free ? ~taken[word] : taken[word];
+        }
+        return (int) Math.min(size, (long) word * WORD + Long.numberOfTrailingZeros(bits));
+    }
+
+    private void set(int low, int high, boolean value) {
+        int firstWord = low / WORD;
+        int lastWord = high / WORD;
+        for (int word = firstWord; word <= lastWord; word++) {
+            int from = word == firstWord ? low % WORD : 0;
+            int to = word == lastWord ? high % WORD : WORD - 1;
+            long mask = (-1L >>> (WORD - 1 - to)) & (-1L << from);
+            if (value) {
+                taken[word] = taken[word] | mask;
+            } else {
+                taken[word] = taken[word] & ~mask;
+            }
+        }
+        update(firstWord, lastWord);
+    }
+
+    /**
+     * Recompute the leaves of the words between firstWord and lastWord and all the nodes above them.
+     */
+    private void update(int firstWord, int lastWord) {
+        for (int word = firstWord; word <= lastWord; word++) {
+            setLeaf(word);
+        }
+        int first = (leaves + firstWord) / 2;
+        int last = (leaves + lastWord) / 2;
+        long span = WORD;
+        while (first > 0) {
+            for (int node = first; node <= last; node++) {
+                merge(node, span);
+            }
+            first = first / 2;
+            last = last / 2;
+            span = span * 2;
+        }
+    }
+
+    private void setLeaf(int word) {
+        long bits = taken[word];
+        int node = leaves + word;
+        prefix[node] = Long.numberOfTrailingZeros(bits);
+        suffix[node] = Long.numberOfLeadingZeros(bits);
+        // every step removes one free bit from the end of every run, so it counts the longest run.
+        int run = 0;
+        long free = ~bits;
+        while (free != 0) {
+            free = free & (free >>> 1);
+            run++;
+        }
+        longest[node] = run;
+    }
+
+    /**
+     * @param node is an inner node of the tree.
+     * @param childSpan is the number of addresses covered by each of its children.
+     */
+    private void merge(int node, long childSpan) {
+        int left = 2 * node;
+        int right = left + 1;
+        prefix[node] = prefix[left] == childSpan ? prefix[left] + prefix[right] : prefix[left];
+        suffix[node] = suffix[right] == childSpan ? suffix[right] + suffix[left] : suffix[right];
+        longest[node] = Math.max(Math.max(longest[left], longest[right]), suffix[left] + prefix[right]);
+    }
+}
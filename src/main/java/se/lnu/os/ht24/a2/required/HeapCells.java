@@ -0,0 +1,47 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.util.Arrays;
+
+/**
+ * The cells in an int array on the heap.
+ */
+class HeapCells implements IntCells {
+
+    private final int[] cells;
+
+    /**
+     * @param length is the number of cells.
+     */
+    HeapCells(int length) {
+        this.cells = new int[length];
+    }
+
+    private HeapCells(int[] cells) {
+        this.cells = cells;
+    }
+
+    @Override
+    public int length() {
+        return cells.length;
+    }
+
+    @Override
+    public int get(int index) {
+        return cells[index];
+    }
+
+    @Override
+    public void fill(int from, int to, int value) {
+        Arrays.fill(cells, from, to, value);
+    }
+
+    @Override
+    public void copyDown(int from, int to, int length) {
+        System.arraycopy(cells, from, cells, to, length);
+    }
+
+    @Override
+    public IntCells copy() {
+        return new HeapCells(cells.clone());
+    }
+}
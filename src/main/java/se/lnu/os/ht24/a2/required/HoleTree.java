@@ -0,0 +1,169 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.util.Random;
+
+/**
+ * The holes of a memory ordered by address, in a treap where every node also knows the biggest hole of its
+ * subtree. It answers "lowest address of a hole of at least n units" in O(log n), without a segment tree over
+ * the whole address space.
+ */
+class HoleTree {
+
+    private final Random priorities = new Random(0);
+    private Node root;
+
+    /**
+     * Add a hole.
+     * @param low is the lowest address of the hole, no other hole starts there.
+     * @param length is the dimension of the hole.
+     */
+    void add(long low, long length) {
+        root = insert(root, new Node(low, length, priorities.nextInt()));
+    }
+
+    /**
+     * Remove a hole.
+     * @param low is the lowest address of a hole in the tree.
+     */
+    void remove(long low) {
+        root = delete(root, low);
+    }
+
+    /**
+     * Remove every hole.
+     */
+    void clear() {
+        root = null;
+    }
+
+    /**
+     * @return the dimension of the biggest hole, 0 if there is none.
+     */
+    long biggest() {
+        if (root == null) {
+            return 0;
+        }
+        return root.biggest;
+    }
+
+    /**
+     * @param address is an address of the memory.
+     * @return the lowest address of the first hole that starts at or after the address, -1 if there is none.
+     */
+    long ceiling(long address) {
+        long found = -1;
+        Node node = root;
+        while (node != null) {
+            if (node.low >= address) {
+                found = node.low;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param dimension is the dimension needed.
+     * @return the lowest address of a hole of at least dimension units, -1 if there is none.
+     */
+    long firstFit(long dimension) {
+        Node node = root;
+        if (node == null || node.biggest < dimension) {
+            return -1;
+        }
+        while (true) {
+            if (node.left != null && node.left.biggest >= dimension) {
+                node = node.left;
+            } else if (node.length >= dimension) {
+                return node.low;
+            } else {
+                node = node.right;
+            }
+        }
+    }
+
+    private Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        // insert as in a search tree, then rotate the new node up while its priority is higher.
+        if (added.low < node.low) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                Node top = node.left;
+                node.left = top.right;
+                top.right = update(node);
+                return update(top);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                Node top = node.right;
+                node.right = top.left;
+                top.left = update(node);
+                return update(top);
+            }
+        }
+        return update(node);
+    }
+
+    private Node delete(Node node, long low) {
+        if (node.low == low) {
+            return merge(node.left, node.right);
+        }
+        if (low < node.low) {
+            node.left = delete(node.left, low);
+        } else {
+            node.right = delete(node.right, low);
+        }
+        return update(node);
+    }
+
+    /**
+     * Merge two subtrees, every address of left is lower than the ones of right.
+     */
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private Node update(Node node) {
+        long biggest = node.length;
+        if (node.left != null && node.left.biggest > biggest) {
+            biggest = node.left.biggest;
+        }
+        if (node.right != null && node.right.biggest > biggest) {
+            biggest = node.right.biggest;
+        }
+        node.biggest = biggest;
+        return node;
+    }
+
+    private static final class Node {
+        private final long low;
+        private final long length;
+        private final int priority;
+        private long biggest;
+        private Node left;
+        private Node right;
+
+        private Node(long low, long length, int priority) {
+            this.low = low;
+            this.length = length;
+            this.priority = priority;
+            this.biggest = length;
+        }
+    }
+}
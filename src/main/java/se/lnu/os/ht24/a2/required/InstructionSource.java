@@ -0,0 +1,78 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+
+import java.util.Iterator;
+import java.util.Queue;
+
+/**
+ * The instructions of a simulation read one by one, in order. The source only has to know the next instruction, so
+ * it can read them on demand from a file or make them with a generator, and a trace of billions of instructions is
+ * run without keeping it in memory.
+ * The next instruction is given as primitives (opcode, id of the process, dimension), no object is needed to run it.
+ */
+public interface InstructionSource {
+
+    /**
+     * @return True if there is a next instruction. It can read the next instruction, but does not remove it.
+     */
+    boolean hasNext();
+
+    /**
+     * @return the opcode of the next instruction, one of the constants of Instruction.
+     */
+    int opcode();
+
+    /**
+     * @return the id of the process of the next instruction, 0 for a compaction.
+     */
+    int processId();
+
+    /**
+     * @return the dimension of the next instruction, 0 for a deallocation or a compaction.
+     */
+    int dimension();
+
+    /**
+     * Remove the next instruction.
+     */
+    void advance();
+
+    /**
+     * @return the number of instructions left, -1 if it is not known before reading them.
+     */
+    default long remaining() {
+        return -1;
+    }
+
+    /**
+     * @return the next instruction as an object.
+     */
+    default Instruction instruction() {
+        return InstructionStream.instruction(opcode(), processId(), dimension());
+    }
+
+    /**
+     * @return the instructions left as a queue. It is a view: polling it removes the instruction from the source,
+     * iterating it reads a copy of the source, and its size is Integer.MAX_VALUE if remaining() is not known.
+     */
+    default Queue<Instruction> asQueue() {
+        return new SourceQueue(this);
+    }
+
+    /**
+     * @return a source with the instructions left, that is read independently of this one.
+     * @throws UnsupportedOperationException if the instructions can only be read once.
+     */
+    default InstructionSource copy() {
+        throw new UnsupportedOperationException("The instructions of this source can only be read once");
+    }
+
+    /**
+     * @param instructions gives the instructions on demand, for example a generator or Stream.iterator().
+     * @return a source that reads the instructions from the iterator only when they are run.
+     */
+    static InstructionSource of(Iterator<? extends Instruction> instructions) {
+        return new IteratorSource(instructions);
+    }
+}
@@ -0,0 +1,304 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+import se.lnu.os.ht24.a2.provided.instructions.AllocationInstruction;
+import se.lnu.os.ht24.a2.provided.instructions.CompactInstruction;
+import se.lnu.os.ht24.a2.provided.instructions.DeallocationInstruction;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * A list of instructions kept in three arrays (the opcode, the id of the process and the dimension), without an
+ * object per instruction: an instruction takes 9 bytes instead of an object with its header and its pointer in a
+ * queue. A SimulationInstanceImpl runs it directly.
+ * The instructions are read in order, like a queue: the cursor is on the next instruction to run, and advance()
+ * removes it. asQueue() gives the same instructions as a Queue of Instruction.
+ * Unlike the other sources, every instruction is in memory, so the stream knows how many are left and can be copied.
+ */
+public class InstructionStream implements InstructionSource {
+
+    public static final int ALLOCATION = Instruction.ALLOCATION;
+    public static final int DEALLOCATION = Instruction.DEALLOCATION;
+    public static final int COMPACTION = Instruction.COMPACTION;
+
+    private byte[] opcodes;
+    private int[] processIds;
+    // 0 for the deallocations and the compactions.
+    private int[] dimensions;
+    // the instructions from position to size - 1 are the ones not run yet.
+    private int position;
+    private int size;
+    // True when the arrays may be read by a copy of this stream, they are copied before the next add.
+    private boolean shared;
+
+    public InstructionStream() {
+        this(16);
+    }
+
+    /**
+     * @param capacity is the number of instructions that can be added before the arrays grow.
+     */
+    public InstructionStream(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.opcodes = new byte[capacity];
+        this.processIds = new int[capacity];
+        this.dimensions = new int[capacity];
+    }
+
+    private InstructionStream(InstructionStream other) {
+        this.opcodes = other.opcodes;
+        this.processIds = other.processIds;
+        this.dimensions = other.dimensions;
+        this.position = other.position;
+        this.size = other.size;
+        this.shared = true;
+    }
+
+    /**
+     * @param instructions are the instructions, in the order they are run.
+     * @return a stream with the same instructions.
+     */
+    public static InstructionStream of(Collection<? extends Instruction> instructions) {
+        InstructionStream stream = new InstructionStream(instructions.size());
+        for (Instruction instruction : instructions) {
+            stream.add(instruction);
+        }
+        return stream;
+    }
+
+    /**
+     * Add an instruction at the end.
+     * @param opcode is ALLOCATION, DEALLOCATION or COMPACTION.
+     * @param processId is the id of the process, ignored for a compaction.
+     * @param dimension is the dimension of the block, ignored for a deallocation or a compaction.
+     */
+    public void add(int opcode, int processId, int dimension) {
+        if (opcode < ALLOCATION || opcode > COMPACTION) {
+            throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+        if (size == opcodes.length || shared) {
+            // the arrays double, so adding n instructions copies less than 2n of them.
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * size);
+            if (capacity == size && shared == false) {
+                throw new IllegalStateException("The stream is full");
+            }
+            capacity = Math.max(capacity, size + 1);
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            processIds = Arrays.copyOf(processIds, capacity);
+            dimensions = Arrays.copyOf(dimensions, capacity);
+            shared = false;
+        }
+        opcodes[size] = (byte) opcode;
+        if (opcode != COMPACTION) {
+            processIds[size] = processId;
+        }
+        if (opcode == ALLOCATION) {
+            dimensions[size] = dimension;
+        }
+        size = size + 1;
+    }
+
+    public void addAllocation(int processId, int dimension) {
+        add(ALLOCATION, processId, dimension);
+    }
+
+    public void addDeallocation(int processId) {
+        add(DEALLOCATION, processId, 0);
+    }
+
+    public void addCompaction() {
+        add(COMPACTION, 0, 0);
+    }
+
+    /**
+     * Add an instruction at the end.
+     * @param instruction is an allocation, a deallocation or a compaction.
+     */
+    public void add(Instruction instruction) {
+        switch (instruction.getOpcode()) {
+            case ALLOCATION:
+                AllocationInstruction allocation = (AllocationInstruction) instruction;
+                addAllocation(allocation.getProcessId(), allocation.getDimension());
+                break;
+            case DEALLOCATION:
+                addDeallocation(((DeallocationInstruction) instruction).getProcessId());
+                break;
+            case COMPACTION:
+                addCompaction();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown instruction " + instruction);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < size;
+    }
+
+    /**
+     * @return the number of instructions not run yet.
+     */
+    @Override
+    public long remaining() {
+        return size - position;
+    }
+
+    /**
+     * @return the opcode of the next instruction.
+     */
+    @Override
+    public int opcode() {
+        check();
+        return opcodes[position];
+    }
+
+    /**
+     * @return the id of the process of the next instruction.
+     */
+    @Override
+    public int processId() {
+        check();
+        return processIds[position];
+    }
+
+    /**
+     * @return the dimension of the next instruction.
+     */
+    @Override
+    public int dimension() {
+        check();
+        return dimensions[position];
+    }
+
+    /**
+     * Remove the next instruction.
+     */
+    @Override
+    public void advance() {
+        check();
+        position = position + 1;
+    }
+
+    /**
+     * @return the next instruction as an object, it is built by this call.
+     */
+    @Override
+    public Instruction instruction() {
+        check();
+        return instruction(position);
+    }
+
+    /**
+     * Copy the stream in constant time: the copy reads the same arrays with its own cursor, and the one of the two
+     * that adds an instruction first takes its own arrays. The arrays are only read, so the copies can be run in
+     * different threads.
+     * @return a stream with the instructions not run yet, that changes independently of this one.
+     */
+    @Override
+    public InstructionStream copy() {
+        InstructionStream copy = new InstructionStream(this);
+        shared = true;
+        return copy;
+    }
+
+    /**
+     * @return the instructions not run yet as a queue. It is a view: polling it removes the instruction from the
+     * stream, and offering an instruction adds it at the end of the stream.
+     */
+    @Override
+    public Queue<Instruction> asQueue() {
+        return new QueueView();
+    }
+
+    @Override
+    public String toString() {
+        return asQueue().toString();
+    }
+
+    private void check() {
+        if (position == size) {
+            throw new NoSuchElementException("No instruction left");
+        }
+    }
+
+    private Instruction instruction(int index) {
+        return instruction(opcodes[index], processIds[index], dimensions[index]);
+    }
+
+    /**
+     * @return a new instruction object with these values.
+     */
+    static Instruction instruction(int opcode, int processId, int dimension) {
+        switch (opcode) {
+            case ALLOCATION:
+                return new AllocationInstruction(processId, dimension);
+            case DEALLOCATION:
+                return new DeallocationInstruction(processId);
+            case COMPACTION:
+                return new CompactInstruction();
+            default:
+                throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * The queue of the instructions not run yet, the objects are built when they are read.
+     */
+    private final class QueueView extends AbstractQueue<Instruction> {
+
+        @Override
+        public boolean offer(Instruction instruction) {
+            InstructionStream.this.add(instruction);
+            return true;
+        }
+
+        @Override
+        public Instruction poll() {
+            if (position == size) {
+                return null;
+            }
+            position = position + 1;
+            return instruction(position - 1);
+        }
+
+        @Override
+        public Instruction peek() {
+            if (position == size) {
+                return null;
+            }
+            return instruction(position);
+        }
+
+        @Override
+        public int size() {
+            return size - position;
+        }
+
+        @Override
+        public Iterator<Instruction> iterator() {
+            return new Iterator<Instruction>() {
+                private int index = position;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+
+                @Override
+                public Instruction next() {
+                    if (index >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    index = index + 1;
+                    return instruction(index - 1);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package se.lnu.os.ht24.a2.required;
+
+/**
+ * A fixed number of int cells, the owner map of a DenseBackend. The cells can be on the heap, outside of it or in
+ * a file.
+ */
+interface IntCells {
+
+    /**
+     * @return the number of cells.
+     */
+    int length();
+
+    /**
+     * @param index is the index of a cell.
+     * @return the value of the cell.
+     */
+    int get(int index);
+
+    /**
+     * Give a value to the cells from from (included) to to (excluded).
+     */
+    void fill(int from, int to, int value);
+
+    /**
+     * Copy length cells from from to to, the two ranges can overlap when to is lower than from.
+     */
+    void copyDown(int from, int to, int length);
+
+    /**
+     * The cells from from (included) to to (excluded) are free now. Their values are never read again, so only the
+     * cells that keep the layout after the end of the simulation need to know it.
+     */
+    default void release(int from, int to) {
+    }
+
+    /**
+     * @return cells with the same values, that change independently of these ones.
+     */
+    IntCells copy();
+
+    /**
+     * Release the file of the cells, nothing is done for the cells in memory.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,120 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Int cells split in buffers of CHUNK cells, for the cells outside of the heap. A buffer is indexed by int, so one
+ * buffer holds at most 2^29 ints, with chunks of 2^28 cells (1 GB) the cells can be as many as an int can count.
+ * The cells are moved in bulk, by pieces that go through an array, never one by one.
+ */
+class IntChunks {
+
+    static final int CHUNK_BITS = 28;
+    static final int CHUNK = 1 << CHUNK_BITS;
+    // the most cells moved at once, the array of a piece is at most 256 KB.
+    private static final int PIECE = 1 << 16;
+
+    private final int length;
+    private final IntBuffer[] chunks;
+
+    /**
+     * @param length is the number of cells.
+     * @param chunks are the buffers, chunks(length) of them, all of CHUNK cells but the last one.
+     */
+    IntChunks(int length, IntBuffer[] chunks) {
+        this.length = length;
+        this.chunks = chunks;
+    }
+
+    /**
+     * @param length is a number of cells.
+     * @return the number of chunks needed for them.
+     */
+    static int chunks(int length) {
+        return (int) ((length + (long) CHUNK - 1) / CHUNK);
+    }
+
+    /**
+     * @param length is a number of cells.
+     * @param chunk is the index of a chunk.
+     * @return the number of cells of the chunk.
+     */
+    static int chunkLength(int length, int chunk) {
+        return (int) Math.min(CHUNK, length - (long) chunk * CHUNK);
+    }
+
+    int length() {
+        return length;
+    }
+
+    int get(int index) {
+        return chunks[index >>> CHUNK_BITS].get(index & (CHUNK - 1));
+    }
+
+    /**
+     * Give a value to the cells from from (included) to to (excluded).
+     */
+    void fill(int from, int to, int value) {
+        int[] piece = new int[Math.min(PIECE, to - from)];
+        Arrays.fill(piece, value);
+        for (int index = from; index < to; index = index + piece.length) {
+            write(index, piece, Math.min(piece.length, to - index));
+        }
+    }
+
+    /**
+     * Copy length cells from from to to, the two ranges can overlap when to is lower than from.
+     */
+    void copyDown(int from, int to, int length) {
+        // a piece is read before it is written, and the next pieces are read above what it writes.
+        int[] piece = new int[Math.min(PIECE, length)];
+        for (int done = 0; done < length; done = done + piece.length) {
+            int count = Math.min(piece.length, length - done);
+            read(from + done, piece, count);
+            write(to + done, piece, count);
+        }
+    }
+
+    /**
+     * Copy the cells from from (included) to to (excluded) in the same cells of other.
+     */
+    void copyTo(IntChunks other, int from, int to) {
+        while (from < to) {
+            int chunk = from >>> CHUNK_BITS;
+            int offset = from & (CHUNK - 1);
+            int count = Math.min(to - from, CHUNK - offset);
+            IntBuffer source = chunks[chunk].duplicate();
+            ((Buffer) source).limit(offset + count).position(offset);
+            IntBuffer target = other.chunks[chunk].duplicate();
+            ((Buffer) target).position(offset);
+            target.put(source);
+            from = from + count;
+        }
+    }
+
+    private void read(int index, int[] piece, int count) {
+        int done = 0;
+        while (done < count) {
+            int offset = (index + done) & (CHUNK - 1);
+            int part = Math.min(count - done, CHUNK - offset);
+            IntBuffer source = chunks[(index + done) >>> CHUNK_BITS].duplicate();
+            ((Buffer) source).position(offset);
+            source.get(piece, done, part);
+            done = done + part;
+        }
+    }
+
+    private void write(int index, int[] piece, int count) {
+        int done = 0;
+        while (done < count) {
+            int offset = (index + done) & (CHUNK - 1);
+            int part = Math.min(count - done, CHUNK - offset);
+            IntBuffer target = chunks[(index + done) >>> CHUNK_BITS].duplicate();
+            ((Buffer) target).position(offset);
+            target.put(piece, done, part);
+            done = done + part;
+        }
+    }
+}
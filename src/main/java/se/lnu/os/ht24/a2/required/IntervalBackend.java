@@ -0,0 +1,374 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.data.ProcessInterval;
+import se.lnu.os.ht24.a2.provided.data.StrategyType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Backend that keeps the memory as a list of intervals (allocated blocks and holes) ordered by their low address.
+ * Holes are the blocks marked free, they have no owner. The allocated blocks are also indexed by their owner, and the holes
+ * by their dimension and in a tree by address that finds the first fit.
+ * Every block is also linked to the block right before and right after it, so its neighbours are found without
+ * a search.
+ * Nothing depends on the size of the memory, a new memory is a single hole, and the addresses are longs so that
+ * the memory can be bigger than what an int can address.
+ */
+class IntervalBackend implements MemoryBackend {
+
+    private final TreeMap<Long, Block> memory = new TreeMap<Long, Block>();
+    // the blocks move in place during a compaction, so the index always points to the right interval.
+    private final HashMap<Integer, Block> blocksById = new HashMap<Integer, Block>();
+    // the holes ordered by dimension, then by address, and the holes by address with the biggest one of every
+    // subtree. A hole must be removed from both before its ends are changed.
+    private final TreeSet<Block> holesBySize = new TreeSet<Block>(BY_SIZE);
+    private final HoleTree holesByAddress = new HoleTree();
+    // the number of free addresses, kept up to date by every allocation and release.
+    private long freeMemory;
+    private long fingerprint;
+
+    /**
+     * Set up an empty memory.
+     * @param size is the size of the memory.
+     */
+    IntervalBackend(long size) {
+        this.freeMemory = size;
+        if (size > 0) {
+            Block hole = new Block(0, size - 1);
+            memory.put(0L, hole);
+            addHole(hole);
+        }
+    }
+
+    @Override
+    public boolean place(int idBlock, long dimension, StrategyType strategy) {
+        Block chosen = null;
+        if (strategy == StrategyType.BEST_FIT) {
+            // the smallest hole big enough, with the lowest address among the holes of that dimension.
+            chosen = holesBySize.ceiling(probe(dimension));
+        } else if (strategy == StrategyType.WORST_FIT) {
+            // the biggest hole, with the lowest address among the holes of that dimension.
+            long biggest = biggestHole();
+            if (biggest >= dimension) {
+                chosen = holesBySize.ceiling(probe(biggest));
+            }
+        } else {
+            // the hole with the lowest address big enough.
+            long low = holesByAddress.firstFit(dimension);
+            if (low >= 0) {
+                chosen = memory.get(low);
+            }
+        }
+        if (chosen == null) {
+            return false;
+        }
+        // we set the beginning of the hole to taken.
+        freeMemory = freeMemory - dimension;
+        removeHole(chosen);
+        fingerprint = fingerprint ^ Fingerprint.block(idBlock, chosen.low, chosen.low + dimension - 1);
+        if (chosen.length() == dimension) {
+            chosen.owner = idBlock;
+            chosen.free = false;
+            blocksById.put(idBlock, chosen);
+        } else {
+            Block block = new Block(chosen.low, chosen.low + dimension - 1, idBlock);
+            link(chosen.prev, block);
+            link(block, chosen);
+            memory.put(block.low, block);
+            blocksById.put(idBlock, block);
+            chosen.low = chosen.low + dimension;
+            memory.put(chosen.low, chosen);
+            addHole(chosen);
+        }
+        return true;
+    }
+
+    @Override
+    public void release(int idBlock) {
+        // Mark the block free and merge it with the holes linked around it, nothing is searched.
+        Block block = blocksById.remove(idBlock);
+        fingerprint = fingerprint ^ Fingerprint.block(idBlock, block.low, block.high);
+        block.free = true;
+        freeMemory = freeMemory + block.length();
+        merge(block);
+    }
+
+    @Override
+    public long compact(long low, long high) {
+        Block block = memory.get(low);
+        Block previous = block.prev;
+        // walk the blocks of the range in address order through the links, each one slides down to the first
+        // free address. The holes of the range are dropped.
+        long moved = 0;
+        long next = low;
+        while (block != null && block.low <= high) {
+            Block following = block.next;
+            memory.remove(block.low);
+            if (block.free) {
+                removeHole(block);
+            } else {
+                long dimension = block.length();
+                if (block.low != next) {
+                    moved = moved + dimension;
+                    fingerprint = fingerprint ^ Fingerprint.block(block.owner, block.low, block.high);
+                    block.low = next;
+                    block.high = next + dimension - 1;
+                    fingerprint = fingerprint ^ Fingerprint.block(block.owner, block.low, block.high);
+                }
+                memory.put(block.low, block);
+                link(previous, block);
+                previous = block;
+                next = next + dimension;
+            }
+            block = following;
+        }
+        link(previous, block);
+        // all the free memory of the range is now a single hole at its end.
+        if (next <= high) {
+            Block hole = new Block(next, high);
+            memory.put(next, hole);
+            link(previous, hole);
+            link(hole, block);
+            merge(hole);
+        }
+        return moved;
+    }
+
+    @Override
+    public boolean containsProcess(int idBlock) {
+        return blocksById.containsKey(idBlock);
+    }
+
+    @Override
+    public List<Integer> processes() {
+        return new ArrayList<Integer>(blocksById.keySet());
+    }
+
+    @Override
+    public int processCount() {
+        return blocksById.size();
+    }
+
+    @Override
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public long processSize(int idBlock) {
+        Block block = blocksById.get(idBlock);
+        if (block != null) {
+            return block.length();
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public ProcessInterval getProcessInterval(int idBlock) {
+        Block block = blocksById.get(idBlock);
+        if (block != null) {
+            return new ProcessInterval(Math.toIntExact(block.low), Math.toIntExact(block.high));
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public WideProcessInterval getWideProcessInterval(int idBlock) {
+        Block block = blocksById.get(idBlock);
+        if (block != null) {
+            return new WideProcessInterval(block.low, block.high);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Set<Integer> neighboringProcesses(int idBlock) {
+        Set<Integer> neighbor = new HashSet<>();
+        Block block = blocksById.get(idBlock);
+        // the blocks cover the whole memory, so the neighbours are the blocks linked before and after.
+        if (block.prev != null && block.prev.free == false) {
+            neighbor.add(block.prev.owner);
+        }
+        if (block.next != null && block.next.free == false) {
+            neighbor.add(block.next.owner);
+        }
+        return neighbor;
+    }
+
+    @Override
+    public long freeMemory() {
+        return freeMemory;
+    }
+
+    @Override
+    public long biggestHole() {
+        return holesByAddress.biggest();
+    }
+
+    @Override
+    public long nextHole(long address) {
+        return holesByAddress.ceiling(address);
+    }
+
+    @Override
+    public long holeEnd(long low) {
+        return memory.get(low).high;
+    }
+
+    @Override
+    public Set<ProcessInterval> freeSlots() {
+        Set<ProcessInterval> freeslots = new HashSet<>();
+        // we go through the index of the holes, the allocated blocks are not visited.
+        for (Block hole : holesBySize) {
+            freeslots.add(new ProcessInterval(Math.toIntExact(hole.low), Math.toIntExact(hole.high)));
+        }
+        return freeslots;
+    }
+
+    @Override
+    public Set<WideProcessInterval> wideFreeSlots() {
+        Set<WideProcessInterval> freeslots = new HashSet<>();
+        for (Block hole : holesBySize) {
+            freeslots.add(new WideProcessInterval(hole.low, hole.high));
+        }
+        return freeslots;
+    }
+
+    @Override
+    public MemoryBackend copy() {
+        IntervalBackend copy = new IntervalBackend(0);
+        copy.freeMemory = freeMemory;
+        copy.fingerprint = fingerprint;
+        // walk the blocks in address order through the links, and link the copies in the same order.
+        Block block = null;
+        if (memory.isEmpty() == false) {
+            block = memory.firstEntry().getValue();
+        }
+        Block previous = null;
+        while (block != null) {
+            Block twin;
+            if (block.free) {
+                twin = new Block(block.low, block.high);
+                copy.addHole(twin);
+            } else {
+                twin = new Block(block.low, block.high, block.owner);
+                copy.blocksById.put(twin.owner, twin);
+            }
+            copy.memory.put(twin.low, twin);
+            link(previous, twin);
+            previous = twin;
+            block = block.next;
+        }
+        return copy;
+    }
+
+    /**
+     * Merge a new hole with the holes right before and after it, then add it to the indexes of the holes.
+     * @param hole is a free block, it is in the memory but not in the indexes.
+     */
+    private void merge(Block hole) {
+        if (hole.prev != null && hole.prev.free) {
+            Block lower = hole.prev;
+            removeHole(lower);
+            memory.remove(hole.low);
+            lower.high = hole.high;
+            link(lower, hole.next);
+            hole = lower;
+        }
+        if (hole.next != null && hole.next.free) {
+            Block higher = hole.next;
+            removeHole(higher);
+            memory.remove(higher.low);
+            hole.high = higher.high;
+            link(hole, higher.next);
+        }
+        addHole(hole);
+    }
+
+    private void addHole(Block hole) {
+        holesBySize.add(hole);
+        holesByAddress.add(hole.low, hole.length());
+    }
+
+    private void removeHole(Block hole) {
+        holesBySize.remove(hole);
+        holesByAddress.remove(hole.low);
+    }
+
+    /**
+     * Link two blocks that follow each other in the memory, one of them can be null at the ends.
+     */
+    private static void link(Block before, Block after) {
+        if (before != null) {
+            before.next = after;
+        }
+        if (after != null) {
+            after.prev = before;
+        }
+    }
+
+    /**
+     * @param dimension is a dimension of hole.
+     * @return a block of that dimension placed before every hole, to search the holes by dimension.
+     */
+    private Block probe(long dimension) {
+        return new Block(-1, dimension - 2);
+    }
+
+    private static final Comparator<Block> BY_SIZE = new Comparator<Block>() {
+        @Override
+        public int compare(Block a, Block b) {
+            if (a.length() != b.length()) {
+                return Long.compare(a.length(), b.length());
+            }
+            return Long.compare(a.low, b.low);
+        }
+    };
+
+    /**
+     * A contiguous interval of the memory, owned by a process or free for a hole.
+     */
+    private static final class Block {
+        private long low;
+        private long high;
+        private int owner;
+        // a hole has no owner, any int can be the id of a process.
+        private boolean free;
+        // the blocks right before and right after this one, null at the ends of the memory.
+        private Block prev;
+        private Block next;
+
+        /**
+         * A block owned by a process.
+         */
+        private Block(long low, long high, int owner) {
+            this.low = low;
+            this.high = high;
+            this.owner = owner;
+        }
+
+        /**
+         * A hole.
+         */
+        private Block(long low, long high) {
+            this.low = low;
+            this.high = high;
+            this.free = true;
+        }
+
+        private long length() {
+            return high - low + 1;
+        }
+    }
+}
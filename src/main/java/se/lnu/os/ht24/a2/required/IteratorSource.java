@@ -0,0 +1,71 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+import se.lnu.os.ht24.a2.provided.instructions.AllocationInstruction;
+import se.lnu.os.ht24.a2.provided.instructions.DeallocationInstruction;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Source that reads the instructions from an iterator, one at a time, so only the next instruction is kept.
+ */
+class IteratorSource implements InstructionSource {
+
+    private final Iterator<? extends Instruction> instructions;
+    // the next instruction, null until it is read from the iterator.
+    private Instruction next;
+
+    IteratorSource(Iterator<? extends Instruction> instructions) {
+        this.instructions = instructions;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null || instructions.hasNext();
+    }
+
+    @Override
+    public int opcode() {
+        return instruction().getOpcode();
+    }
+
+    @Override
+    public int processId() {
+        Instruction instruction = instruction();
+        switch (instruction.getOpcode()) {
+            case Instruction.ALLOCATION:
+                return ((AllocationInstruction) instruction).getProcessId();
+            case Instruction.DEALLOCATION:
+                return ((DeallocationInstruction) instruction).getProcessId();
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public int dimension() {
+        Instruction instruction = instruction();
+        if (instruction.getOpcode() == Instruction.ALLOCATION) {
+            return ((AllocationInstruction) instruction).getDimension();
+        }
+        return 0;
+    }
+
+    @Override
+    public void advance() {
+        instruction();
+        next = null;
+    }
+
+    @Override
+    public Instruction instruction() {
+        if (next == null) {
+            if (instructions.hasNext() == false) {
+                throw new NoSuchElementException("No instruction left");
+            }
+            next = instructions.next();
+        }
+        return next;
+    }
+}
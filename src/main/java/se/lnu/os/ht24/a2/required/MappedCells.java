@@ -0,0 +1,207 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The cells in a file mapped in memory, the operating system keeps in memory only the pages in use, so the cells
+ * can be bigger than the memory of the machine. The file stays after the end of the simulation with the layout of
+ * the memory, in big endian:
+ * - the int MAGIC, then the int number of cells,
+ * - one bit per cell, set when the cell is taken (bit i % 8 of the byte 8 + i / 8),
+ * - the int owner of every cell from the first multiple of 8 after the bits, only meaningful for the taken cells.
+ * The file stays open until close(). Java can not unmap a buffer, so the mappings are released when the cells are
+ * garbage collected, and the pages are written to the file by the operating system.
+ * Only the owners are in the file, the heap still holds the free runs of the DenseBackend (see DenseBackend).
+ */
+class MappedCells implements IntCells {
+
+    static final int MAGIC = 0x4D454D31;
+    static final int HEADER = 8;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int length;
+    private final MappedByteBuffer taken;
+    // the same bits read 64 at a time, bit i % 64 of a long is the cell i.
+    private final ByteBuffer bits;
+    // the owners are mapped by chunks of the file (see IntChunks).
+    private final IntChunks owners;
+
+    /**
+     * Create the file, or empty it if it exists, with every cell free.
+     * @param file is the file of the cells.
+     * @param length is the number of cells.
+     */
+    MappedCells(Path file, int length) {
+        this(file, length, false);
+    }
+
+    /**
+     * @param temporary is True for a file that is deleted when the cells are closed.
+     */
+    private MappedCells(Path file, int length, boolean temporary) {
+        this.file = file;
+        this.length = length;
+        long takenBytes = (length + 7L) / 8;
+        long ownersOffset = (HEADER + takenBytes + 7) / 8 * 8;
+        try {
+            if (temporary) {
+                this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            } else {
+                this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            this.taken = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + takenBytes);
+            taken.putInt(0, MAGIC);
+            taken.putInt(4, length);
+            this.bits = taken.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            IntBuffer[] chunks = new IntBuffer[IntChunks.chunks(length)];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                long first = (long) chunk * IntChunks.CHUNK;
+                long cells = IntChunks.chunkLength(length, chunk);
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, ownersOffset + first * Integer.BYTES,
+                        cells * Integer.BYTES).asIntBuffer();
+            }
+            this.owners = new IntChunks(length, chunks);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public int get(int index) {
+        return owners.get(index);
+    }
+
+    @Override
+    public void fill(int from, int to, int value) {
+        owners.fill(from, to, value);
+        mark(from, to, true);
+    }
+
+    @Override
+    public void copyDown(int from, int to, int length) {
+        owners.copyDown(from, to, length);
+        mark(to, to + length, true);
+    }
+
+    @Override
+    public void release(int from, int to) {
+        mark(from, to, false);
+    }
+
+    /**
+     * Copy the cells in a temporary file next to this one, deleted when the copy is closed. The bits are copied in
+     * bulk, and the owners of the taken runs only, found 64 cells at a time, so the free cells cost nothing.
+     * @return the same cells in their own file, this file keeps the layout of this memory only.
+     */
+    @Override
+    public IntCells copy() {
+        MappedCells copy;
+        try {
+            Path copyFile = Files.createTempFile(file.toAbsolutePath().getParent(), "snapshot", ".bin");
+            copyFile.toFile().deleteOnExit();
+            copy = new MappedCells(copyFile, length, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ByteBuffer source = taken.duplicate();
+        ((Buffer) source).position(HEADER);
+        ByteBuffer target = copy.taken.duplicate();
+        ((Buffer) target).position(HEADER);
+        target.put(source);
+        int index = next(0, true);
+        while (index < length) {
+            int end = next(index, false);
+            owners.copyTo(copy.owners, index, end);
+            index = next(end, true);
+        }
+        return copy;
+    }
+
+    /**
+     * Close the file, the mappings stay valid until the cells are garbage collected.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param from is the index of a cell.
+     * @param value is True for a taken cell, False for a free one.
+     * @return the first cell at or after from that is taken or free, length if there is none.
+     */
+    private int next(int from, boolean value) {
+        int index = from;
+        while (index < length) {
+            int position = HEADER + index / 8;
+            if (index % 64 == 0 && position + Long.BYTES <= bits.limit()) {
+                // 64 cells at once.
+                long word = bits.getLong(position);
+                if (value == false) {
+                    word = ~word;
+                }
+                if (word != 0) {
+                    return Math.min(length, index + Long.numberOfTrailingZeros(word));
+                }
+                index = index + 64;
+            } else if (((taken.get(position) & (1 << (index % 8))) != 0) == value) {
+                return index;
+            } else {
+                index++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Set or clear the taken bits of the cells from from (included) to to (excluded).
+     */
+    private void mark(int from, int to, boolean value) {
+        int index = from;
+        while (index < to) {
+            int position = HEADER + index / 8;
+            if (index % 8 == 0 && to - index >= 8) {
+                // a whole byte at once.
+                taken.put(position, value ? (byte) -1 : 0);
+                index = index + 8;
+            } else {
+                byte bits = taken.get(position);
+                if (value) {
+                    bits = (byte) (bits | (1 << (index % 8)));
+                } else {
+                    bits = (byte) (bits & ~(1 << (index % 8)));
+                }
+                taken.put(position, bits);
+                index++;
+            }
+        }
+    }
+}
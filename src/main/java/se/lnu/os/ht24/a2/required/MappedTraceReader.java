@@ -0,0 +1,168 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+/**
+ * Source that reads a trace written by a TraceWriter straight from the file mapped in memory: the records are decoded
+ * from the mapping when they are run, nothing is copied and no Instruction object is made.
+ * The file is read through MappedWindows, so a trace can be bigger than 2 GB.
+ */
+public class MappedTraceReader implements InstructionSource, Closeable {
+
+    private final MappedWindows windows;
+    // the number of instructions left, -1 if the writer was not closed, then the records it had written are read
+    // to the end of the file.
+    private long remaining;
+    // the address in the file of the next record.
+    private long address;
+    // the next record, decoded once, and the address of the record after it.
+    private boolean decoded;
+    private int opcode;
+    private int processId;
+    private int dimension;
+    private long following;
+    // the value of the last varint read, so that reading one does not need an object.
+    private int value;
+
+    /**
+     * Open a trace from its first instruction.
+     * @param file is a file written by a TraceWriter.
+     */
+    public MappedTraceReader(Path file) {
+        this.windows = new MappedWindows(file, 0);
+        ByteBuffer header = windows.window();
+        if (header.limit() < TraceWriter.HEADER || header.getInt(0) != TraceWriter.MAGIC) {
+            windows.close();
+            throw new IllegalArgumentException(file + " is not a trace");
+        }
+        this.remaining = header.getLong(Integer.BYTES);
+        this.address = TraceWriter.HEADER;
+    }
+
+    /**
+     * Open a trace from a record.
+     * @param address is the address of the record in the file.
+     * @param remaining is the number of instructions from the record.
+     */
+    private MappedTraceReader(MappedWindows windows, long address, long remaining) {
+        this.windows = windows;
+        this.address = address;
+        this.remaining = remaining;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (remaining >= 0) {
+            return remaining > 0;
+        }
+        return address < windows.size();
+    }
+
+    @Override
+    public int opcode() {
+        decode();
+        return opcode;
+    }
+
+    @Override
+    public int processId() {
+        decode();
+        return processId;
+    }
+
+    @Override
+    public int dimension() {
+        decode();
+        return dimension;
+    }
+
+    @Override
+    public void advance() {
+        decode();
+        address = following;
+        decoded = false;
+        if (remaining > 0) {
+            remaining = remaining - 1;
+        }
+    }
+
+    @Override
+    public long remaining() {
+        return remaining;
+    }
+
+    /**
+     * @return a reader of the same file from the next instruction, with its own mapping. It must be closed too.
+     */
+    @Override
+    public MappedTraceReader copy() {
+        return new MappedTraceReader(windows.copy(address), address, remaining);
+    }
+
+    /**
+     * Close the file, the instructions can not be read anymore.
+     */
+    @Override
+    public void close() {
+        windows.close();
+    }
+
+    /**
+     * Decode the next record, the address stays on it until advance().
+     */
+    private void decode() {
+        if (decoded) {
+            return;
+        }
+        if (hasNext() == false) {
+            throw new NoSuchElementException("No instruction left");
+        }
+        int position = windows.reach(address, TraceWriter.MAX_RECORD);
+        ByteBuffer window = windows.window();
+        try {
+            opcode = window.get(position);
+            position = position + 1;
+            processId = 0;
+            dimension = 0;
+            if (opcode == Instruction.DEALLOCATION) {
+                position = varint(window, position);
+                processId = value;
+            } else if (opcode == Instruction.ALLOCATION) {
+                position = varint(window, position);
+                processId = value;
+                position = varint(window, position);
+                dimension = value;
+            } else if (opcode != Instruction.COMPACTION) {
+                throw new IllegalStateException("Unknown opcode " + opcode + " in " + windows.file());
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException("The trace " + windows.file() + " is truncated");
+        }
+        following = windows.start() + position;
+        decoded = true;
+    }
+
+    /**
+     * Read a zigzag varint into value.
+     * @param position is the position of its first byte in the window.
+     * @return the position of the byte after it.
+     */
+    private int varint(ByteBuffer window, int position) {
+        int bits = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = window.get(position);
+            position = position + 1;
+            bits = bits | ((current & 0x7F) << shift);
+            shift = shift + 7;
+        } while (current < 0);
+        value = (bits >>> 1) ^ -(bits & 1);
+        return position;
+    }
+}
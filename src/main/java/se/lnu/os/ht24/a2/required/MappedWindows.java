@@ -0,0 +1,130 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file read through a window mapped in memory, for the readers of the traces. A buffer is indexed by int, so a
+ * window is at most 1 GB, and it moves forward when a reader needs bytes past its end: the bytes are never copied.
+ * A buffer given in memory is read the same way, as a single window.
+ */
+class MappedWindows implements Closeable {
+
+    private static final long WINDOW = 1L << 30;
+
+    // null when the bytes are a buffer given in memory.
+    private final Path file;
+    private final FileChannel channel;
+    private final long size;
+    private ByteBuffer window;
+    // the address of the first byte of the window.
+    private long start;
+
+    /**
+     * Open a file with the window at an address.
+     * @param file is the file, it is only read.
+     * @param address is the address of the first byte of the window.
+     */
+    MappedWindows(Path file, long address) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        map(address);
+    }
+
+    /**
+     * @param bytes are the bytes from their position to their limit, they are not copied.
+     */
+    MappedWindows(ByteBuffer bytes) {
+        this.file = null;
+        this.channel = null;
+        this.window = bytes.slice();
+        this.size = window.limit();
+    }
+
+    /**
+     * @return the file, null for a buffer given in memory.
+     */
+    Path file() {
+        return file;
+    }
+
+    /**
+     * @return the number of bytes of the file.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return the window, read with absolute gets at the positions given by reach().
+     */
+    ByteBuffer window() {
+        return window;
+    }
+
+    /**
+     * @return the address of the first byte of the window.
+     */
+    long start() {
+        return start;
+    }
+
+    /**
+     * Move the window, if needed, so that it has the bytes from an address on. It only moves forward.
+     * @param address is an address at or after the start of the window.
+     * @param bytes is the number of bytes needed, fewer are there at the end of the file.
+     * @return the position of the address in the window.
+     */
+    int reach(long address, int bytes) {
+        if (address - start + bytes > window.limit() && start + window.limit() < size) {
+            map(address);
+        }
+        return (int) (address - start);
+    }
+
+    /**
+     * @param address is an address at or after the start of the window.
+     * @return windows on the same bytes, at the same addresses, from the address: a file is opened again, a buffer
+     * is shared.
+     */
+    MappedWindows copy(long address) {
+        if (file != null) {
+            return new MappedWindows(file, address);
+        }
+        return new MappedWindows(window);
+    }
+
+    /**
+     * Close the file, nothing is done for a buffer.
+     */
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void map(long address) {
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, address, Math.min(WINDOW, size - address));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        start = address;
+    }
+}
@@ -0,0 +1,131 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.data.ProcessInterval;
+import se.lnu.os.ht24.a2.provided.data.StrategyType;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The address space behind a MemoryImpl. It knows which process owns which addresses and keeps an index
+ * from every process id to its block, so the process queries do not need to search the memory.
+ * The free addresses are kept apart from the owners, so any int can be the id of a process.
+ * The addresses and dimensions are longs, a backend that only addresses ints never sees bigger ones. The int
+ * queries throw an ArithmeticException for a block or a hole that an int can not address.
+ */
+interface MemoryBackend {
+
+    /**
+     * Find a hole for the block with the strategy and give it to the process.
+     * @param idBlock is the id of the block, it is not in the memory yet.
+     * @param dimension is the dimension of the block, at least 1.
+     * @param strategy is the strategy.
+     * @return True -> the block has been placed / False -> no hole is big enough.
+     */
+    boolean place(int idBlock, long dimension, StrategyType strategy);
+
+    /**
+     * Give the addresses of a block back to the free memory, merged with the holes right before and after it.
+     * The indexes of the holes are updated in the same step, without going through the memory.
+     * @param idBlock is the id of a block in the memory.
+     */
+    void release(int idBlock);
+
+    /**
+     * Slide every block of a range down, keeping their order, so that the free memory of the range becomes a single
+     * hole at its end. The whole memory is compacted with the range 0 to size - 1.
+     * @param low is the first address of the range, a block or a hole starts there.
+     * @param high is the last address of the range, a block or a hole ends there.
+     * @return the number of units moved, the blocks already in place are not counted.
+     */
+    long compact(long low, long high);
+
+    /**
+     * @param idBlock is the id of the block.
+     * @return True if the block is in the memory.
+     */
+    boolean containsProcess(int idBlock);
+
+    /**
+     * @return the ids of the blocks in the memory.
+     */
+    List<Integer> processes();
+
+    /**
+     * @return the number of blocks in the memory.
+     */
+    int processCount();
+
+    /**
+     * @return the xor of the Fingerprint of every block, equal for two memories with the same layout.
+     */
+    long fingerprint();
+
+    /**
+     * @param idBlock is the id of the block.
+     * @return the dimension of the block, 0 if it is not in the memory.
+     */
+    long processSize(int idBlock);
+
+    /**
+     * @param idBlock is the id of the block.
+     * @return the interval of the block, null if it is not in the memory.
+     */
+    ProcessInterval getProcessInterval(int idBlock);
+
+    /**
+     * @param idBlock is the id of the block.
+     * @return the interval of the block with 64 bits addresses, null if it is not in the memory.
+     */
+    WideProcessInterval getWideProcessInterval(int idBlock);
+
+    /**
+     * @param idBlock is the id of a block in the memory.
+     * @return the ids of the blocks right before and right after it.
+     */
+    Set<Integer> neighboringProcesses(int idBlock);
+
+    /**
+     * @return the number of free addresses.
+     */
+    long freeMemory();
+
+    /**
+     * @return the dimension of the biggest hole, 0 if the memory is full.
+     */
+    long biggestHole();
+
+    /**
+     * Walk the holes in address order, without building them.
+     * @param address is 0 or the address right after the end of a hole.
+     * @return the lowest address of the first hole that starts at or after the address, -1 if there is none.
+     */
+    long nextHole(long address);
+
+    /**
+     * @param low is the lowest address of a hole.
+     * @return the highest address of the hole.
+     */
+    long holeEnd(long low);
+
+    /**
+     * @return one interval per hole.
+     */
+    Set<ProcessInterval> freeSlots();
+
+    /**
+     * @return one interval with 64 bits addresses per hole.
+     */
+    Set<WideProcessInterval> wideFreeSlots();
+
+    /**
+     * @return a backend with the same layout, that changes independently of this one.
+     */
+    MemoryBackend copy();
+
+    /**
+     * Release what the backend holds outside of the heap, for the backends in a file. Nothing is done by default.
+     */
+    default void close() {
+    }
+}
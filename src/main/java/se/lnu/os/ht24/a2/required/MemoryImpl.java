@@ -4,29 +4,127 @@ import se.lnu.os.ht24.a2.provided.data.ProcessInterval;
 import se.lnu.os.ht24.a2.provided.data.StrategyType;
 import se.lnu.os.ht24.a2.provided.interfaces.Memory;
 
-import java.util.ArrayList;
-import java.util.Dictionary;
-import java.util.Enumeration;
-import java.util.HashSet;
-import java.util.Hashtable;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
-public class MemoryImpl implements Memory {
+public class MemoryImpl implements Memory, Closeable {
 
-    private final int size;
-    private Dictionary<Integer, Integer> memory = new Hashtable<Integer, Integer>();
-    private Dictionary<Integer, Integer> blockListAllocated = new Hashtable<Integer, Integer>();
-    private int emptyID;
+    private final long size;
+    // the backend knows which process owns which address, and which addresses are free.
+    // it also indexes the processes by id, so the process queries are constant time.
+    private MemoryBackend memory;
+    // the free slots of the last call, null when the memory changed since then.
+    private Set<ProcessInterval> freeSlots;
+    // the memories that share the backend after a snapshot, null when this memory is the only one using it.
+    private Sharing sharing;
+    // True when the backend is in a file, then the backend is never shared so that the file keeps this layout.
+    private boolean inFile;
+    // null when nobody listens, then nothing is built for it.
+    private MemoryListener listener;
 
     /**
      * Set up the memory simulator
      * @param size is the size of the memory
      */
     public MemoryImpl(int size){
+        this(size, BackendType.INTERVAL);
+    }
+
+    /**
+     * Set up the memory simulator with a chosen backend.
+     * @param size is the size of the memory
+     * @param backendType is the way the address space is stored.
+     */
+    public MemoryImpl(int size, BackendType backendType){
         this.size = size;
-        emptyID = -1; //Set up the id for empty blocks of memory
-        resetMemory();
+        if (backendType == BackendType.DENSE) {
+            memory = new DenseBackend(new HeapCells(size));
+        } else if (backendType == BackendType.OFF_HEAP) {
+            memory = new DenseBackend(new DirectCells(size));
+        } else {
+            memory = new IntervalBackend(size);
+        }
+    }
+
+    /**
+     * Set up the memory simulator with the owner of every address in a file mapped in memory, for memories bigger
+     * than the heap. The file keeps the layout of the memory after the end of the simulation (see MappedCells).
+     * The memory must be closed, and the heap still holds the free runs (see DenseBackend).
+     * @param size is the size of the memory
+     * @param file is the file, it is created or emptied.
+     */
+    public MemoryImpl(int size, Path file){
+        this.size = size;
+        memory = new DenseBackend(new MappedCells(file, size));
+        inFile = true;
+    }
+
+    /**
+     * Set up a memory simulator with 64 bits addresses, the blocks and the holes are kept as intervals so nothing
+     * depends on the size. The int queries throw an ArithmeticException for a block or a hole past what an int
+     * can address, the wide ones work for every address.
+     * @param size is the size of the memory
+     */
+    public MemoryImpl(long size){
+        this.size = size;
+        memory = new IntervalBackend(size);
+    }
+
+    private MemoryImpl(MemoryImpl other){
+        this.size = other.size;
+        this.memory = other.memory;
+        this.freeSlots = other.freeSlots;
+        this.sharing = other.sharing;
+    }
+
+    private MemoryImpl(long size, MemoryBackend memory){
+        this.size = size;
+        this.memory = memory;
+    }
+
+    /**
+     * @param listener receives what happens in the memory from now on, null to remove it.
+     */
+    public void setListener(MemoryListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Take a snapshot of the memory in constant time. The snapshot and this memory share their layout until one of
+     * them changes, then the one that changes takes its own copy, so the changes of one are never seen by the other.
+     * The snapshot of a memory mapped in a file is copied right away in a temporary file next to it (see
+     * MappedCells.copy()): the file always keeps the layout of this memory, whichever of the two changes first.
+     * That snapshot must be closed, its file is deleted then.
+     * The listener of this memory does not listen to the snapshot.
+     * @return a memory with the same layout.
+     */
+    public MemoryImpl snapshot() {
+        if (inFile) {
+            MemoryImpl copy = new MemoryImpl(size, memory.copy());
+            copy.inFile = true;
+            return copy;
+        }
+        if (sharing == null) {
+            sharing = new Sharing();
+        }
+        synchronized (sharing) {
+            sharing.memories++;
+        }
+        return new MemoryImpl(this);
+    }
+
+    /**
+     * Close the file of a memory mapped in a file, nothing is done for the other memories. The memory must not
+     * change anymore, its mapping is released once it is garbage collected.
+     */
+    @Override
+    public void close() {
+        if (inFile) {
+            memory.close();
+        }
     }
 
     /**
@@ -39,97 +137,41 @@ public class MemoryImpl implements Memory {
      * False -> error : creation of an exeption.
      */
     public boolean AllocateBlock(int idBlock, int dimension, StrategyType strategy) {
-        if (idBlock == emptyID) { //Prevent usage of the Empty block ID
-            switchEmptyID();
-        }
+        return AllocateBlock(idBlock, (long) dimension, strategy);
+    }
+
+    /**
+     * This function tries to allocate a block that can be bigger than what an int can count.
+     * @param idBlock is the id of the block.
+     * @param dimension is the dimension of the block.
+     * @param strategy is the strategy.
+     * @return True -> Allocation successful / False -> the block is already allocated or no hole is big enough.
+     */
+    public boolean AllocateBlock(int idBlock, long dimension, StrategyType strategy) {
         if (this.containsProcess(idBlock)) {
-            return false;
-        }
-        int memoryAvaible = 0;
-        ArrayList<Integer> currentMemory = new ArrayList<Integer>();
-        ArrayList<Integer> biggestMemory = new ArrayList<Integer>();
-        ArrayList<Integer> smalestMemory = new ArrayList<Integer>(size);
-        ArrayList<Integer> revArrayList = getCurrentMemory();
-        // verify each memory piece avaibility.
-        for (int key : revArrayList) {
-            // if memory avaible : add 1 to the memory avaible and arraylist of the current block.
-            // if the block is not avaible, we verify if the object have gone thru is the biggest or the smallest.
-            if (memory.get(key) != emptyID) {
-                if (memoryAvaible >= dimension) {
-                    if (currentMemory.size() > biggestMemory.size()) {
-                        biggestMemory.clear();
-                        for (int keybig : currentMemory) {
-                            biggestMemory.add(keybig);
-                        }
-                    }
-                    if (currentMemory.size() < smalestMemory.size()) {
-                        smalestMemory.clear();
-                        for (int keybig : currentMemory) {
-                            smalestMemory.add(keybig);
-                        }
-                    }
-                    if (smalestMemory.size() == 0) {
-                        smalestMemory.clear();
-                        for (int keybig : currentMemory) {
-                            smalestMemory.add(keybig);
-                        }
-                    }
-                    System.out.println(biggestMemory);
-                }
-                // clear the currently selected block.
-                memoryAvaible = 0;
-                currentMemory.clear();
-            } else if (memory.get(key) == emptyID) {
-                memoryAvaible = memoryAvaible + 1;
-                currentMemory.add(key);
-            }
-            // if the memory is enough to put the instruction and the strategy is the first fit.
-            if (memoryAvaible >= dimension && strategy == StrategyType.FIRST_FIT) {
-                // we set the memory to taken.
-                for (int i: currentMemory) {
-                    memory.put(i, idBlock);
-                }
-                // we add the block to the dictionay allocated and delete it from the unassigned block.
-                blockListAllocated.put(idBlock, dimension);
-                return true;
-            }
+            return allocationFailed(idBlock, dimension);
         }
-        // at the end of the memory, we check if the last block of memory correspond to the biggest or smallest.
-        if (currentMemory.size() > biggestMemory.size() && memoryAvaible >= dimension) {
-            biggestMemory = currentMemory;
+        if (dimension <= 0) {
+            return allocationFailed(idBlock, dimension);
         }
-        if (smalestMemory.size() == 0) {
-            smalestMemory = currentMemory;
+        if (memory.biggestHole() < dimension) {
+            return allocationFailed(idBlock, dimension);
         }
-        if ((currentMemory.size() < smalestMemory.size() && memoryAvaible >= dimension)) {
-            smalestMemory = currentMemory;
+        ownMemory();
+        if (memory.place(idBlock, dimension, strategy) == false) {
+            return allocationFailed(idBlock, dimension);
         }
-        // we verify the strategy and add the block to the memory if their is enough place
-        if (biggestMemory.size() >= dimension && strategy == StrategyType.WORST_FIT) {
-                // we set the memory to taken.
-                int count = 0;
-                for (int i: biggestMemory) {
-                    if (count < dimension) {
-                        memory.put(i, idBlock);
-                        count = count + 1;
-                    }
-                }
-                // we add the block to the dictionay allocated and delete it from the unassigned block.
-                blockListAllocated.put(idBlock, dimension);
-                return true;
+        freeSlots = null;
+        if (listener != null) {
+            WideProcessInterval interval = memory.getWideProcessInterval(idBlock);
+            listener.allocated(idBlock, interval.getLowAddress(), interval.getHighAddress(), strategy);
         }
-        if (smalestMemory.size() >= dimension && strategy == StrategyType.BEST_FIT) {
-                // we set the memory to taken.
-                int count = 0;
-                for (int i: smalestMemory) {
-                    if (count < dimension) {
-                        memory.put(i, idBlock);
-                        count = count + 1;
-                    }
-                }
-                // we add the block to the dictionay allocated and delete it from the unassigned block.
-                blockListAllocated.put(idBlock, dimension);
-                return true;
+        return true;
+    }
+
+    private boolean allocationFailed(int idBlock, long dimension) {
+        if (listener != null) {
+            listener.allocationFailed(idBlock, dimension, memory.biggestHole());
         }
         return false;
     }
@@ -141,34 +183,30 @@ public class MemoryImpl implements Memory {
      */
     public boolean unAllocate(int idBlock) {
         if (this.containsProcess(idBlock) == false) {
-            System.out.println("Error : the block is not assigned");
+            if (listener != null) {
+                listener.freeFailed(idBlock);
+            }
             return false;
         }
-        // Reset the memory dictionary assigned to the block.
-        Enumeration<Integer> id = memory.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (memory.get(key) == idBlock) {
-                memory.put(key, emptyID);
-            }
+        // Give the addresses of the block back to the free memory and remove it from the index.
+        WideProcessInterval interval = null;
+        if (listener != null) {
+            interval = memory.getWideProcessInterval(idBlock);
+        }
+        ownMemory();
+        memory.release(idBlock);
+        freeSlots = null;
+        if (listener != null) {
+            listener.freed(idBlock, interval.getLowAddress(), interval.getHighAddress());
         }
-        // remove from the list
-        blockListAllocated.remove(idBlock);
         return true;
     }
 
     @Override
     public boolean containsProcess(int blockId) {
         // TODO Replace this return statement with the method that checks if blockId is allocated in the memory
-        // if the id is in the assigned list, return true.
-        Enumeration<Integer> id = blockListAllocated.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (key == blockId) {
-                return true;
-            }
-        }
-        return false;
+        // if the id is in the index, return true.
+        return memory.containsProcess(blockId);
     }
 
     @Override
@@ -177,14 +215,8 @@ public class MemoryImpl implements Memory {
             Replace this return statement with the list of blockIds of the currently allocated blocks
             in the memory. If the memory is empty, return an empty List.
          */
-        List<Integer> listIds = new ArrayList<Integer>();
-        // add all the ids in the allocated disctionnairy to a arraylist.
-        Enumeration<Integer> id = blockListAllocated.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            listIds.add(key);
-        }
-        return listIds;
+        // all the ids in the index.
+        return memory.processes();
     }
 
     @Override
@@ -193,20 +225,9 @@ public class MemoryImpl implements Memory {
             Replace this return statement with the method that returns the dimension of the block with blockId
             in the memory, 0 if it is not allocated.
          */
-        if (blockId == emptyID) {
-            return 0;
-        }
-        // get throu all the allocated dictionairy.
         // if the blockid is registered, return it's dimension.
-        Enumeration<Integer> id = blockListAllocated.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (key == blockId) {
-                return blockListAllocated.get(blockId);
-            }
-        }
         // if block not allocated, return 0.
-        return 0;
+        return Math.toIntExact(memory.processSize(blockId));
     }
 
     @Override
@@ -215,54 +236,85 @@ public class MemoryImpl implements Memory {
             Replace this return statement with the method that returns a BlockInterval instance containing the
             lower and upper address in memory of the block with blockId. Return null if the block is not allocated
          */
-        if (blockId == emptyID) {
-            return null;
-        }
-        int high = 0;
-        int low = 0;
-        boolean allocated = false;
-        Enumeration<Integer> id = memory.keys();
-        // go throu all the memory, get the high memory and low using the indicator "allocated"
-        // that indicate if the id has been found.
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (memory.get(key) == blockId) {
-                if (allocated) {
-                    low = key;
-                } else {
-                    low = key;
-                    high = key;
-                    allocated = true;
-                }
-            }
-        }
         // if id was found, return the block interval.
         // else null.
-        if (allocated) {
-            return new ProcessInterval(low, high);
-        } else {
-            return null;
-        }
+        return memory.getProcessInterval(blockId);
+    }
+
+    /**
+     * @param blockId is the id of the block.
+     * @return the interval of the block with 64 bits addresses, null if the block is not allocated.
+     */
+    public WideProcessInterval getWideProcessInterval(int blockId) {
+        return memory.getWideProcessInterval(blockId);
     }
 
     /**
      * this funcrion compact the memory.
+     * @return the number of units moved by the compaction.
+     */
+    public long compact() {
+        if (size == 0) {
+            return 0;
+        }
+        ownMemory();
+        long moved = memory.compact(0, size - 1);
+        freeSlots = null;
+        if (listener != null) {
+            listener.compacted(moved);
+        }
+        return moved;
+    }
+
+    /**
+     * this function compact only the part of the memory needed to get a hole of a dimension.
+     * the blocks between some holes next to each other slide down so that the holes become one, and the holes are
+     * chosen so that the fewest units are moved, among the compactions that keep the blocks in order.
+     * @param dimension is the dimension of the hole needed.
+     * @return the number of units moved (0 if a hole is already big enough), -1 if there is not enough free memory.
      */
-    public void compact() {
-        ArrayList<Integer> revArrayList =  getCurrentMemory();
-        ArrayList<Integer> finalList = new ArrayList<Integer>();
-        for (int key: revArrayList) {
-            if (finalList.contains(memory.get(key)) == false && memory.get(key).equals(emptyID) == false) {
-                finalList.add(memory.get(key));
+    public long compact(long dimension) {
+        if (memory.biggestHole() >= dimension) {
+            return 0;
+        }
+        if (memory.freeMemory() < dimension) {
+            return -1;
+        }
+        // the holes from first to last give a hole of their total dimension, by moving all the blocks between them.
+        // for every last hole, the first one is the closest one that still gives enough free memory.
+        // the two holes walk in address order through the backend, nothing is built or sorted.
+        long firstLow = memory.nextHole(0);
+        long firstHigh = memory.holeEnd(firstLow);
+        long free = 0;
+        long bestLow = -1;
+        long bestHigh = -1;
+        long bestCost = 0;
+        long lastLow = firstLow;
+        while (lastLow >= 0) {
+            long lastHigh = memory.holeEnd(lastLow);
+            free = free + lastHigh - lastLow + 1;
+            while (free - (firstHigh - firstLow + 1) >= dimension) {
+                free = free - (firstHigh - firstLow + 1);
+                firstLow = memory.nextHole(firstHigh + 1);
+                firstHigh = memory.holeEnd(firstLow);
+            }
+            if (free >= dimension) {
+                long cost = lastLow - firstLow - (free - (lastHigh - lastLow + 1));
+                if (bestLow < 0 || cost < bestCost) {
+                    bestLow = firstLow;
+                    bestHigh = lastHigh;
+                    bestCost = cost;
+                }
             }
+            lastLow = memory.nextHole(lastHigh + 1);
         }
-        resetMemory();
-        // reasign each block to the reseted memory.
-        for (int key : finalList) {
-            int dimmension = blockListAllocated.get(key);
-            blockListAllocated.remove(key);
-            AllocateBlock(key, dimmension, StrategyType.FIRST_FIT);
+        ownMemory();
+        long moved = memory.compact(bestLow, bestHigh);
+        freeSlots = null;
+        if (listener != null) {
+            listener.compacted(moved);
         }
+        return moved;
     }
 
     @Override
@@ -273,44 +325,7 @@ public class MemoryImpl implements Memory {
               memory and max. 2 if the block is surrounded both left and right by other blocks). For no neighboring
             blocks, return an empty Set.
          */
-
-        System.out.println("starting the methode Neighboring proccess for :" + blockId);
-        Set<Integer> neighbor = new HashSet<>(); 
-        //uses boolean to check if the lower and higher have been found.
-        boolean lower = true;
-        boolean high = true;
-        int lowBlockId = 0;
-        int highBlockId = 0;
-        System.out.println("Initalization of all the basic parameters needed:");
-        // check if the lower exist
-        ProcessInterval block = getProcessInterval(blockId);
-        if (block.getLowAddress() == 0) {
-            lower = false;
-        }
-        // check if the neighbour with the lower memory exist.
-        // if it exist, the lower neighbour is register
-        else if (memory.get(block.getLowAddress() - 1) == emptyID) {
-            lower = false;
-        } else {
-            lowBlockId = memory.get(block.getLowAddress() - 1);
-        }
-        System.out.println("lower exist : first step passed");
-        // same for the higher.
-        if (block.getHighAddress() == size - 1) {
-            high = false;
-        } else if (memory.get(block.getHighAddress() + 1) == emptyID) {
-            high = false;
-        } else {
-            highBlockId = memory.get(block.getHighAddress() + 1);
-        }
-        //we add them in the set.
-        if (lower) {
-            neighbor.add(lowBlockId);
-        }
-        if (high) {
-            neighbor.add(highBlockId);
-        }
-        return neighbor;
+        return memory.neighboringProcesses(blockId);
     }
 
     @Override
@@ -319,31 +334,13 @@ public class MemoryImpl implements Memory {
             Replace this return statement with the method that returns the memory fragmentation value. There is
             no need to round decimals, as the Tests will do it before checking.
          */
-        double biggest = 0;
-        double currentBlock = 0;
-        double freeMemory = 0;
         // simple calculation with the help of the formula given.
-        // here we calculate the freememory and the biggest block of free memory.
-        Enumeration<Integer> id = memory.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (memory.get(key) == emptyID) {
-                freeMemory = freeMemory + 1;
-                currentBlock = currentBlock + 1;
-            } else if (currentBlock > biggest) {
-                biggest = currentBlock;
-                currentBlock = 0;
-            } else {
-                currentBlock = 0;
-            }
-        }
-        if (currentBlock > biggest) {
-            biggest = currentBlock;
-            currentBlock = 0;
-        }
+        // the backend keeps the free memory and the biggest block of free memory up to date, nothing is scanned.
+        double freeMemory = memory.freeMemory();
         if (freeMemory == 0) {
             return 0;
         }
+        double biggest = memory.biggestHole();
         double fragmentation = 1 - (biggest/freeMemory);
         if (biggest == 0) {
             return 0;
@@ -352,30 +349,15 @@ public class MemoryImpl implements Memory {
         }
     }
 
+    /**
+     * @return the dimension of the biggest hole, Integer.MAX_VALUE if it is bigger than that.
+     */
     public int getBiggestMemoryAvaible() {
-        int biggest = 0;
-        int currentBlock = 0;
-        Enumeration<Integer> id = memory.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (memory.get(key) == emptyID) {
-                currentBlock = currentBlock + 1;
-            } else if (currentBlock > biggest) {
-                biggest = currentBlock;
-                currentBlock = 0;
-            } else {
-                currentBlock = 0;
-            }
-        }
-        if (currentBlock > biggest) {
-            biggest = currentBlock;
-        }
-        return biggest;
+        return (int) Math.min(memory.biggestHole(), Integer.MAX_VALUE);
     }
     
     @Override
     public Set<ProcessInterval> freeSlots() {
-        System.out.println("-- START FREESLOT COUNT --");
         /* TODO
             Replace this return statement with the method that returns the set of BlockInterval instances
             corresponding to the free slots of the memory. Return exactly one BlockInterval per slot, make sure
@@ -383,41 +365,22 @@ public class MemoryImpl implements Memory {
             and 100-199 will be considered an error, while adding 0-199 is the only correct solution). If the
             memory is full, return an empty Set.
          */
-        // we save all free set of memory in this hash set. 
-        Set<ProcessInterval> freeslots = new HashSet<>();
-        int startingSlot = 0;
-        int currentSlot = 0;
-        boolean freeSlotStarted = false;
-        // we go throu all the memory and take each set, put them in the list.
-        Enumeration<Integer> id = memory.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (memory.get(key) == emptyID && freeSlotStarted == false) {
-                System.out.println("Start a new free block:");
-                System.out.println(key + "Is the first starting slot");
-                currentSlot = key;
-                startingSlot = key;
-                freeSlotStarted = true;
-                System.out.println(startingSlot);
-            } else if (memory.get(key) == emptyID) {
-                currentSlot = key;
-            } else if (freeSlotStarted) {
-                System.out.println("End of the free block interval");
-                System.out.println(currentSlot);
-                ProcessInterval interval = new ProcessInterval(currentSlot, startingSlot);
-                System.out.println(currentSlot + " " + startingSlot);
-                freeslots.add(interval);
-                freeSlotStarted = false;
+        // the set is only built again after an allocation, a deallocation or a compaction.
+        // it can not be modified, so the same set is given to every caller until then.
+        if (freeSlots == null) {
+            freeSlots = Collections.unmodifiableSet(memory.freeSlots());
+            if (listener != null) {
+                listener.freeSlotsCollected(freeSlots.size());
             }
         }
-        if (freeSlotStarted) {
-            System.out.println("End of the free block interval");
-            System.out.println(currentSlot);
-            ProcessInterval interval = new ProcessInterval(currentSlot, startingSlot);
-            freeslots.add(interval);
-            freeSlotStarted = false;
-        }
-        return freeslots;
+        return freeSlots;
+    }
+
+    /**
+     * @return one interval with 64 bits addresses per free slot of the memory.
+     */
+    public Set<WideProcessInterval> wideFreeSlots() {
+        return memory.wideFreeSlots();
     }
 
     @Override
@@ -429,88 +392,88 @@ public class MemoryImpl implements Memory {
          */
         if (o instanceof MemoryImpl) {
             MemoryImpl comparedMemory = (MemoryImpl) o;
-            if (this.size != comparedMemory.size) {
+            if (this.memory == comparedMemory.memory) {
+                // the same memory, or a snapshot that did not change.
+                return true;
+            }
+            // the fingerprints are the same for the same layout, so most of the different memories stop here.
+            if (this.size != comparedMemory.size
+                    || memory.processCount() != comparedMemory.memory.processCount()
+                    || memory.fingerprint() != comparedMemory.memory.fingerprint()) {
                 return false;
             }
-            for (int key : this.processes()) {
-                if (comparedMemory.containsProcess(key) == false) {
-                    return false;
-                }
-                if (comparedMemory.getProcessInterval(key).getHighAddress() != this.getProcessInterval(key).getHighAddress()) {
-                    return false;
-                }
-                if (comparedMemory.getProcessInterval(key).getLowAddress() != this.getProcessInterval(key).getLowAddress()) {
-                    System.out.println("------- CASE 3");
-                    return false;
-                }
-                if (comparedMemory.processSize(key) != this.processSize(key)) {
-                    System.out.println("------- CASE 4");
+            // same number of processes, so if every process of this one is at the same place in the other one,
+            // the other one has no process more.
+            for (int key : memory.processes()) {
+                WideProcessInterval interval = memory.getWideProcessInterval(key);
+                if (interval.equals(comparedMemory.memory.getWideProcessInterval(key)) == false) {
                     return false;
                 }
             }
-        return true;
+            return true;
         } else {
-            System.out.println("Wrong instance");
             return false;
         }
     }
 
+    @Override
+    public int hashCode() {
+        // the same for the memories with the same layout, the blocks are already hashed by the backend.
+        return Long.hashCode(memory.fingerprint() * 31 + size);
+    }
+
     @Override
     public String toString() {
         StringBuilder retStr = new StringBuilder("Memory Size = " + size + "\n");
-        if(processes() != null) {
-            for (int blockId : processes()) {
-                ProcessInterval inter = getProcessInterval(blockId);
-                retStr.append("(").append(inter.getLowAddress()).append("-").append(inter.getHighAddress()).append(")")
-                        .append(" --> ").append("ID ").append(blockId).append("\n");
-            }
+        for (int blockId : processes()) {
+            WideProcessInterval inter = getWideProcessInterval(blockId);
+            retStr.append("(").append(inter.getLowAddress()).append("-").append(inter.getHighAddress()).append(")")
+                    .append(" --> ").append("ID ").append(blockId).append("\n");
         }
-        if(freeSlots() != null) {
+        if (size <= Integer.MAX_VALUE) {
+            // the cached free slots, nothing is collected again if the memory did not change.
             for (ProcessInterval bi : freeSlots()) {
                 retStr.append("(").append(bi.getLowAddress()).append("-").append(bi.getHighAddress()).append(")")
                         .append(" --> ").append("EMPTY").append("\n");
             }
+        } else {
+            // the wide intervals, for the memories bigger than what an int can address.
+            for (WideProcessInterval bi : wideFreeSlots()) {
+                retStr.append("(").append(bi.getLowAddress()).append("-").append(bi.getHighAddress()).append(")")
+                        .append(" --> ").append("EMPTY").append("\n");
+            }
         }
         return retStr.toString();
     }
 
-    private void switchEmptyID() {
-        int oldID = emptyID;
-        boolean success = false;
-        while (success == false) {
-            emptyID = emptyID - 1;
-            if (this.containsProcess(emptyID) == false) {
-                success = true;
-            }
-        }
-        Enumeration<Integer> id = memory.keys();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            if (memory.get(key) == oldID) {
-                memory.put(key, emptyID);
+    /**
+     * Called before every change of the memory: if the backend is shared with a snapshot, this memory takes its
+     * own copy of it first.
+     * The memories that share a backend can change in different threads, so this memory stops counting only once
+     * its copy is done: the last one never changes the backend while another one is still copying it.
+     */
+    private void ownMemory() {
+        if (sharing == null) {
+            return;
+        }
+        boolean shared;
+        synchronized (sharing) {
+            shared = sharing.memories > 1;
+        }
+        if (shared) {
+            MemoryBackend copy = memory.copy();
+            synchronized (sharing) {
+                sharing.memories--;
             }
+            memory = copy;
         }
+        sharing = null;
     }
 
-    private ArrayList<Integer> getCurrentMemory() {
-        Enumeration<Integer> id = memory.keys();
-        List<Integer> list = new ArrayList<>();
-        while (id.hasMoreElements()) {
-            int key = id.nextElement();
-            list.add(key);
-        }
-        ArrayList<Integer> revArrayList = new ArrayList<Integer>();
-        for (int i = list.size() - 1; i >= 0; i--) {
-            revArrayList.add(list.get(i));
-        }
-        return revArrayList;
-    }
-
-    private void resetMemory() {
-        int counter = size - 1;
-        while (0 <= counter) {
-            memory.put(counter, emptyID);
-            counter = counter - 1;
-        }
+    /**
+     * The number of memories that use the same backend.
+     */
+    private static final class Sharing {
+        private int memories = 1;
     }
 }
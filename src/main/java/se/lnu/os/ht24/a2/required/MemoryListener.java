@@ -0,0 +1,59 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.data.StrategyType;
+
+/**
+ * Receives what happens in a MemoryImpl. Every method does nothing by default, so a listener only writes the ones
+ * it needs. A memory without listener does not build any of the values given here.
+ */
+public interface MemoryListener {
+
+    /**
+     * A block has been allocated.
+     * @param idBlock is the id of the block.
+     * @param low is the lowest address of the block.
+     * @param high is the highest address of the block.
+     * @param strategy is the strategy used to find the hole.
+     */
+    default void allocated(int idBlock, long low, long high, StrategyType strategy) {
+    }
+
+    /**
+     * A block could not be allocated.
+     * @param idBlock is the id of the block.
+     * @param dimension is the dimension asked.
+     * @param biggestHole is the dimension of the biggest hole at that time.
+     */
+    default void allocationFailed(int idBlock, long dimension, long biggestHole) {
+    }
+
+    /**
+     * A block has been freed.
+     * @param idBlock is the id of the block.
+     * @param low is the lowest address the block had.
+     * @param high is the highest address the block had.
+     */
+    default void freed(int idBlock, long low, long high) {
+    }
+
+    /**
+     * A block that is not in the memory could not be freed.
+     * @param idBlock is the id of the block.
+     */
+    default void freeFailed(int idBlock) {
+    }
+
+    /**
+     * The memory, or a part of it, has been compacted.
+     * @param moved is the number of units moved.
+     */
+    default void compacted(long moved) {
+    }
+
+    /**
+     * The free slots have been collected again because the memory changed since the last time.
+     * @param slots is the number of free slots.
+     */
+    default void freeSlotsCollected(int slots) {
+    }
+}
@@ -8,20 +8,69 @@ import se.lnu.os.ht24.a2.provided.instructions.DeallocationInstruction;
 import se.lnu.os.ht24.a2.provided.interfaces.Memory;
 import se.lnu.os.ht24.a2.provided.interfaces.SimulationInstance;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 
-public class SimulationInstanceImpl implements SimulationInstance {
+/**
+ * A simulation of the instructions on a memory with one strategy. When its instructions are read from a file (a
+ * MappedTraceReader or a TraceParser) or its memory is mapped in a file, the simulation must be closed, and so must
+ * every fork of it.
+ */
+public class SimulationInstanceImpl implements SimulationInstance, Closeable {
     private Queue<Instruction> remainingInstructions;
+    // null when the instructions are objects in a queue, else remainingInstructions is a view of it.
+    private final InstructionSource source;
     private final MemoryImpl memory;
     private final StrategyType strategyType;
+    private final CompactionMode compactionMode;
     private List<InstructionException> instructionExceptions;
+    // null when nobody listens, then nothing is built for it.
+    private SimulationListener listener;
 
     public SimulationInstanceImpl(Queue<Instruction> instructions, MemoryImpl memory, StrategyType strategyType){
+        this(instructions, memory, strategyType, CompactionMode.MANUAL);
+    }
+
+    /**
+     * Set up a simulation that can compact the memory by itself.
+     * @param compactionMode is when the memory is compacted.
+     */
+    public SimulationInstanceImpl(Queue<Instruction> instructions, MemoryImpl memory, StrategyType strategyType,
+                                  CompactionMode compactionMode){
         this.remainingInstructions = instructions;
+        this.source = null;
+        this.memory = memory;
+        this.strategyType = strategyType;
+        this.compactionMode = compactionMode;
+        this.instructionExceptions = new ArrayList<>();
+    }
+
+    /**
+     * Set up a simulation that reads its instructions from a source, only when they are run. An InstructionStream
+     * is run without an object per instruction.
+     * @param instructions are the instructions, getInstructions() gives a view of them.
+     */
+    public SimulationInstanceImpl(InstructionSource instructions, MemoryImpl memory, StrategyType strategyType){
+        this(instructions, memory, strategyType, CompactionMode.MANUAL);
+    }
+
+    /**
+     * Set up a simulation that reads its instructions from a source and can compact the memory by itself.
+     * @param instructions are the instructions, getInstructions() gives a view of them.
+     * @param compactionMode is when the memory is compacted.
+     */
+    public SimulationInstanceImpl(InstructionSource instructions, MemoryImpl memory, StrategyType strategyType,
+                                  CompactionMode compactionMode){
+        this.remainingInstructions = instructions.asQueue();
+        this.source = instructions;
         this.memory = memory;
         this.strategyType = strategyType;
+        this.compactionMode = compactionMode;
         this.instructionExceptions = new ArrayList<>();
     }
 
@@ -35,6 +84,12 @@ public class SimulationInstanceImpl implements SimulationInstance {
              For FIRST_FIT, always start from the address 0 when searching for a valid hole.
          */
 
+        if (source != null) {
+            while (source.hasNext()) {
+                executeNext();
+            }
+            return;
+        }
         while (remainingInstructions.size() > 0) {
             Instruction instruction = remainingInstructions.remove();
             executeInstruction(instruction);
@@ -47,41 +102,153 @@ public class SimulationInstanceImpl implements SimulationInstance {
             Implement the method to run a stepped simulation (one step = one instruction). If steps > actual available
             instructions, just run all the simulation.
          */
-        if (steps >= remainingInstructions.size()) {
+        if (source != null) {
+            // the number of instructions left may not be known, they are read until the end of the source.
+            while (steps > 0 && source.hasNext()) {
+                executeNext();
+                steps = steps - 1;
+            }
+        } else if (steps >= remainingInstructions.size()) {
             runAll();
         } else {
             while (steps > 0) {
-                Instruction instruction = remainingInstructions.remove();
-                executeInstruction(instruction);
+                executeInstruction(remainingInstructions.remove());
                 steps = steps - 1;
             }
         }
     }
 
+    /**
+     * @param listener receives the instructions run from now on, null to remove it.
+     */
+    public void setListener(SimulationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start a new simulation from the current state of this one, without running the instructions already done again.
+     * The memory is a snapshot, so the two simulations go on independently.
+     * The instructions of the fork are a copy of the source, a file is opened again: the fork must be closed.
+     * @param strategyType is the strategy of the new simulation.
+     * @return a simulation with the remaining instructions, the memory and the exceptions of this one.
+     * @throws UnsupportedOperationException if the instructions come from a source that can only be read once.
+     */
+    public SimulationInstanceImpl fork(StrategyType strategyType) {
+        SimulationInstanceImpl fork;
+        if (source != null) {
+            fork = new SimulationInstanceImpl(source.copy(), memory.snapshot(), strategyType, compactionMode);
+        } else {
+            fork = new SimulationInstanceImpl(new ArrayDeque<Instruction>(remainingInstructions),
+                    memory.snapshot(), strategyType, compactionMode);
+        }
+        fork.instructionExceptions.addAll(instructionExceptions);
+        return fork;
+    }
+
+    /**
+     * Close the source of the instructions and the memory if they are in a file, nothing is done for a queue, a
+     * source in memory or a memory on the heap. The instructions not run yet can not be run anymore.
+     */
+    @Override
+    public void close() {
+        memory.close();
+        if (source instanceof Closeable == false) {
+            return;
+        }
+        try {
+            ((Closeable) source).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Execute an instruction.
-     * @param instruction is the instruction.
-     * if the instruction fail to execute, an instruction exception is created.
+     * @param instruction is the instruction, it is chosen by its opcode without testing its class.
+     * if the instruction fail to execute, or is not known, an instruction exception is created.
      */
     private void executeInstruction(Instruction instruction) {
-        boolean success = true;
+        boolean success;
+        try {
+            switch (instruction.getOpcode()) {
+                case Instruction.ALLOCATION:
+                    AllocationInstruction allocation = (AllocationInstruction) instruction;
+                    success = allocate(allocation.getProcessId(), allocation.getDimension());
+                    break;
+                case Instruction.DEALLOCATION:
+                    success = memory.unAllocate(((DeallocationInstruction) instruction).getProcessId());
+                    break;
+                case Instruction.COMPACTION:
+                    memory.compact();
+                    success = true;
+                    break;
+                default:
+                    // an instruction we do not know does nothing to the memory.
+                    success = false;
+            }
+        } catch (Exception e) {
+            success = false;
+        }
+        report(success, instruction);
+    }
+
+    /**
+     * Execute the next instruction of the source and remove it.
+     * The instruction is only built as an object when it fails or when a listener receives it.
+     */
+    private void executeNext() {
+        boolean success;
         try {
-            if (instruction instanceof AllocationInstruction) {
-                AllocationInstruction allocation = (AllocationInstruction) instruction;
-                success = memory.AllocateBlock(allocation.getProcessId(), allocation.getDimension(), strategyType);
-            } else if (instruction instanceof DeallocationInstruction) {
-                DeallocationInstruction allocation = (DeallocationInstruction) instruction;
-                success = memory.unAllocate(allocation.getProcessId());
-            } else {
-                memory.compact();
+            switch (source.opcode()) {
+                case Instruction.ALLOCATION:
+                    success = allocate(source.processId(), source.dimension());
+                    break;
+                case Instruction.DEALLOCATION:
+                    success = memory.unAllocate(source.processId());
+                    break;
+                case Instruction.COMPACTION:
+                    memory.compact();
+                    success = true;
+                    break;
+                default:
+                    success = false;
             }
-            if (success == false) {
-                instructionExceptions.add(new InstructionException(instruction, memory.getBiggestMemoryAvaible()));
-                System.out.println("Failure on the instruction: " + instruction.toString() + "The available memory left is :" + memory.getBiggestMemoryAvaible());
-            }         
         } catch (Exception e) {
-            instructionExceptions.add(new InstructionException(instruction, memory.getBiggestMemoryAvaible()));
-            System.out.println("Failure on the instruction: " + instruction.toString() + "The available memory left is :" + memory.getBiggestMemoryAvaible());
+            success = false;
+        }
+        if (success == false || listener != null) {
+            report(success, source.instruction());
+        }
+        source.advance();
+    }
+
+    /**
+     * Allocate a block with the strategy of the simulation.
+     * @return True -> the block has been allocated / False -> it could not.
+     */
+    private boolean allocate(int processId, int dimension) {
+        boolean success = memory.AllocateBlock(processId, dimension, strategyType);
+        // no hole is big enough, but the holes together may be: compact just what is needed and try again.
+        if (success == false && compactionMode == CompactionMode.ON_DEMAND
+                && memory.containsProcess(processId) == false
+                && memory.compact(dimension) > 0) {
+            success = memory.AllocateBlock(processId, dimension, strategyType);
+        }
+        return success;
+    }
+
+    /**
+     * Add an instruction exception if the instruction failed, and tell the listener.
+     */
+    private void report(boolean success, Instruction instruction) {
+        if (success == false) {
+            InstructionException exception = new InstructionException(instruction, memory.getBiggestMemoryAvaible());
+            instructionExceptions.add(exception);
+            if (listener != null) {
+                listener.failed(instruction, exception);
+            }
+        } else if (listener != null) {
+            listener.executed(instruction);
         }
     }
 
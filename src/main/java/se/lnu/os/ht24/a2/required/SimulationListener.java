@@ -0,0 +1,25 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+import se.lnu.os.ht24.a2.provided.exceptions.InstructionException;
+
+/**
+ * Receives the instructions run by a SimulationInstanceImpl. Every method does nothing by default.
+ */
+public interface SimulationListener {
+
+    /**
+     * An instruction has been run without error.
+     * @param instruction is the instruction.
+     */
+    default void executed(Instruction instruction) {
+    }
+
+    /**
+     * An instruction failed, the exception has been added to the exceptions of the simulation.
+     * @param instruction is the instruction.
+     * @param exception is the exception of the instruction.
+     */
+    default void failed(Instruction instruction, InstructionException exception) {
+    }
+}
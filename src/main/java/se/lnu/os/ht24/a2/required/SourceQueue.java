@@ -0,0 +1,142 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The queue of the instructions left in a source. Polling it reads the source, iterating it reads a copy of the
+ * source, so the instructions are not run. A source that can only be read once has only its next instruction to
+ * show. The size is Integer.MAX_VALUE when the source does not know how many instructions are left.
+ */
+class SourceQueue extends AbstractQueue<Instruction> {
+
+    private final InstructionSource source;
+
+    SourceQueue(InstructionSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public boolean offer(Instruction instruction) {
+        throw new UnsupportedOperationException("No instruction can be added to this source");
+    }
+
+    @Override
+    public Instruction poll() {
+        if (source.hasNext() == false) {
+            return null;
+        }
+        Instruction instruction = source.instruction();
+        source.advance();
+        return instruction;
+    }
+
+    @Override
+    public Instruction peek() {
+        if (source.hasNext() == false) {
+            return null;
+        }
+        return source.instruction();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return source.hasNext() == false;
+    }
+
+    @Override
+    public int size() {
+        if (source.hasNext() == false) {
+            return 0;
+        }
+        long remaining = source.remaining();
+        if (remaining < 0) {
+            // not known before the end of the source, it may be more than an int can count.
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    /**
+     * @return the instructions left, read from a copy of the source. A copy of a file is closed once the iterator
+     * reaches its end.
+     */
+    @Override
+    public Iterator<Instruction> iterator() {
+        InstructionSource copy;
+        try {
+            copy = source.copy();
+        } catch (UnsupportedOperationException e) {
+            Instruction head = peek();
+            if (head == null) {
+                return Collections.emptyIterator();
+            }
+            return Collections.singletonList(head).iterator();
+        }
+        return new Iterator<Instruction>() {
+            private boolean closed;
+
+            @Override
+            public boolean hasNext() {
+                if (closed) {
+                    return false;
+                }
+                if (copy.hasNext()) {
+                    return true;
+                }
+                closed = true;
+                close(copy);
+                return false;
+            }
+
+            @Override
+            public Instruction next() {
+                if (hasNext() == false) {
+                    throw new NoSuchElementException();
+                }
+                Instruction instruction = copy.instruction();
+                copy.advance();
+                return instruction;
+            }
+        };
+    }
+
+    // the arrays are not made from size(), it is Integer.MAX_VALUE for an unknown number of instructions.
+    @Override
+    public Object[] toArray() {
+        return list().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] array) {
+        return list().toArray(array);
+    }
+
+    private List<Instruction> list() {
+        List<Instruction> list = new ArrayList<>();
+        for (Instruction instruction : this) {
+            list.add(instruction);
+        }
+        return list;
+    }
+
+    private static void close(InstructionSource copy) {
+        if (copy instanceof Closeable == false) {
+            return;
+        }
+        try {
+            ((Closeable) copy).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
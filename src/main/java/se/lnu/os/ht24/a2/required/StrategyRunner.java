@@ -0,0 +1,180 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.data.StrategyType;
+import se.lnu.os.ht24.a2.provided.exceptions.InstructionException;
+import se.lnu.os.ht24.a2.provided.interfaces.Memory;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run the same trace with several strategies at once, one simulation per strategy in its own thread, to compare them.
+ * Every simulation reads a copy of the trace and starts from a snapshot of the same memory, so the instructions
+ * and the starting layout are shared and only read: an InstructionStream is not copied, and a trace in a file is
+ * opened once per strategy on the same pages.
+ */
+public class StrategyRunner {
+
+    private final InstructionSource trace;
+    private final MemoryImpl memory;
+    private final CompactionMode compactionMode;
+
+    /**
+     * @param trace are the instructions, it is not read by the runner, only copied.
+     * @param memory is the memory every strategy starts from, it does not change.
+     */
+    public StrategyRunner(InstructionSource trace, MemoryImpl memory) {
+        this(trace, memory, CompactionMode.MANUAL);
+    }
+
+    /**
+     * @param trace are the instructions, it is not read by the runner, only copied.
+     * @param memory is the memory every strategy starts from, it does not change.
+     * @param compactionMode is when the simulations compact their memory.
+     */
+    public StrategyRunner(InstructionSource trace, MemoryImpl memory, CompactionMode compactionMode) {
+        this.trace = trace;
+        this.memory = memory;
+        this.compactionMode = compactionMode;
+    }
+
+    /**
+     * Run the whole trace with every strategy, on as many threads as there are strategies and processors.
+     * @param strategies are the strategies to compare.
+     * @param sampleEvery is the number of instructions between two points of the fragmentation curves.
+     * @return the result of every strategy, in the order of StrategyType. The simulations are closed, they have no
+     * instruction left.
+     * @throws UnsupportedOperationException if the trace can only be read once.
+     */
+    public Map<StrategyType, Result> run(Set<StrategyType> strategies, int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("sampleEvery must be at least 1");
+        }
+        // the copies and the snapshots are taken here, before the threads start.
+        Map<StrategyType, SimulationInstanceImpl> simulations = new EnumMap<>(StrategyType.class);
+        ExecutorService executor = null;
+        try {
+            for (StrategyType strategy : strategies) {
+                simulations.put(strategy, new SimulationInstanceImpl(trace.copy(), memory.snapshot(), strategy,
+                        compactionMode));
+            }
+            int threads = Math.max(1, Math.min(simulations.size(), Runtime.getRuntime().availableProcessors()));
+            executor = Executors.newFixedThreadPool(threads);
+            Map<StrategyType, Future<double[]>> curves = new EnumMap<>(StrategyType.class);
+            for (Map.Entry<StrategyType, SimulationInstanceImpl> entry : simulations.entrySet()) {
+                SimulationInstanceImpl simulation = entry.getValue();
+                curves.put(entry.getKey(), executor.submit(() -> runAll(simulation, sampleEvery)));
+            }
+            Map<StrategyType, Result> results = new EnumMap<>(StrategyType.class);
+            for (Map.Entry<StrategyType, Future<double[]>> entry : curves.entrySet()) {
+                try {
+                    results.put(entry.getKey(), new Result(simulations.get(entry.getKey()), entry.getValue().get()));
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("The simulation with " + entry.getKey() + " failed", e.getCause());
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while the strategies were running", e);
+        } finally {
+            if (executor != null) {
+                // when a strategy failed, the others stop at their next sample, and nothing is closed while one of
+                // them still reads its copy.
+                executor.shutdownNow();
+                awaitTermination(executor);
+            }
+            // a copy of a trace in a file has the file open, the trace given to the runner stays open.
+            for (SimulationInstanceImpl simulation : simulations.values()) {
+                simulation.close();
+            }
+        }
+    }
+
+    /**
+     * Wait for every thread of the executor to end, even if this thread is interrupted meanwhile.
+     */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (executor.isTerminated() == false) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run a simulation to its end, by steps of sampleEvery instructions. It stops after a step if the thread is
+     * interrupted.
+     * @return the fragmentation before the first instruction and after every step.
+     */
+    private static double[] runAll(SimulationInstanceImpl simulation, int sampleEvery) {
+        double[] curve = new double[16];
+        int points = 0;
+        curve[points++] = simulation.getMemory().fragmentation();
+        while (simulation.getInstructions().isEmpty() == false && Thread.currentThread().isInterrupted() == false) {
+            simulation.run(sampleEvery);
+            if (points == curve.length) {
+                curve = Arrays.copyOf(curve, points * 2);
+            }
+            curve[points++] = simulation.getMemory().fragmentation();
+        }
+        return Arrays.copyOf(curve, points);
+    }
+
+    /**
+     * What a strategy gives at the end of the trace.
+     */
+    public static final class Result {
+
+        private final SimulationInstanceImpl simulation;
+        private final double[] fragmentation;
+
+        private Result(SimulationInstanceImpl simulation, double[] fragmentation) {
+            this.simulation = simulation;
+            this.fragmentation = fragmentation;
+        }
+
+        /**
+         * @return the simulation, with all its instructions run.
+         */
+        public SimulationInstanceImpl getSimulation() {
+            return simulation;
+        }
+
+        public Memory getMemory() {
+            return simulation.getMemory();
+        }
+
+        public List<InstructionException> getExceptions() {
+            return simulation.getExceptions();
+        }
+
+        /**
+         * @return the fragmentation before the first instruction, then after every sampleEvery instructions and at
+         * the end of the trace.
+         */
+        public double[] getFragmentation() {
+            return fragmentation.clone();
+        }
+
+        @Override
+        public String toString() {
+            return simulation.getStrategyType() + ": " + getExceptions().size() + " exceptions, fragmentation "
+                    + fragmentation[fragmentation.length - 1];
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Source that reads the instructions written like their toString(): A(1, 20), D(1) and C. The text is read byte by
+ * byte from a buffer, or from a file mapped in memory, without building strings, so a trace is parsed as fast as the
+ * simulation runs it.
+ * Between two instructions, the spaces, the new lines, the commas, the semicolons and the brackets are skipped, so a
+ * trace can have one instruction per line or be the printed queue of a simulation. Anything else is an error.
+ * A file is read through MappedWindows, an instruction can not be longer than MAX_TEXT bytes.
+ */
+public class TraceParser implements InstructionSource, Closeable {
+
+    static final int MAX_TEXT = 64;
+    // the bytes skipped between two instructions, a look up is cheaper than a chain of comparisons.
+    private static final boolean[] SEPARATOR = new boolean[256];
+
+    static {
+        for (char separator : " \n\r\t,;[]".toCharArray()) {
+            SEPARATOR[separator] = true;
+        }
+    }
+
+    private final MappedWindows windows;
+    // the address in the text of the next byte.
+    private long address;
+    // the next instruction, parsed once, and the address of the byte after it.
+    private boolean decoded;
+    private int opcode;
+    private int processId;
+    private int dimension;
+    private long following;
+    // the window and the position in it of the byte being parsed.
+    private ByteBuffer window;
+    private int position;
+
+    /**
+     * Parse a text file from its beginning.
+     * @param file is a file of instructions in the text notation.
+     */
+    public TraceParser(Path file) {
+        this(new MappedWindows(file, 0), 0);
+    }
+
+    /**
+     * Parse the text of a buffer, from its position to its limit. The buffer is not copied.
+     * @param text is the text, in ASCII or UTF-8.
+     */
+    public TraceParser(ByteBuffer text) {
+        this(new MappedWindows(text), 0);
+    }
+
+    private TraceParser(MappedWindows windows, long address) {
+        this.windows = windows;
+        this.address = address;
+    }
+
+    /**
+     * @param file is a file of instructions in the text notation.
+     * @return the instructions of the file in a stream, without an object per instruction.
+     */
+    public static InstructionStream parseStream(Path file) {
+        InstructionStream stream = new InstructionStream();
+        try (TraceParser parser = new TraceParser(file)) {
+            while (parser.hasNext()) {
+                stream.add(parser.opcode(), parser.processId(), parser.dimension());
+                parser.advance();
+            }
+        }
+        return stream;
+    }
+
+    /**
+     * @param file is a file of instructions in the text notation.
+     * @return the instructions of the file as objects, in a queue for a SimulationInstanceImpl.
+     */
+    public static Queue<Instruction> parseQueue(Path file) {
+        Queue<Instruction> instructions = new ArrayDeque<>();
+        try (TraceParser parser = new TraceParser(file)) {
+            while (parser.hasNext()) {
+                instructions.add(parser.instruction());
+                parser.advance();
+            }
+        }
+        return instructions;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (decoded) {
+            return true;
+        }
+        // skip what is between two instructions, the window moves when it has been read to its end.
+        while (address < windows.size()) {
+            int next = windows.reach(address, MAX_TEXT);
+            ByteBuffer bytes = windows.window();
+            int limit = bytes.limit();
+            while (next < limit && SEPARATOR[bytes.get(next) & 0xFF]) {
+                next = next + 1;
+            }
+            address = windows.start() + next;
+            if (next < limit) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int opcode() {
+        decode();
+        return opcode;
+    }
+
+    @Override
+    public int processId() {
+        decode();
+        return processId;
+    }
+
+    @Override
+    public int dimension() {
+        decode();
+        return dimension;
+    }
+
+    @Override
+    public void advance() {
+        decode();
+        address = following;
+        decoded = false;
+    }
+
+    /**
+     * @return a parser of the same text from the next instruction, a file is opened again (the copy must be closed
+     * too) and a buffer is shared.
+     */
+    @Override
+    public TraceParser copy() {
+        return new TraceParser(windows.copy(address), address);
+    }
+
+    /**
+     * Close the file, nothing is done for a buffer.
+     */
+    @Override
+    public void close() {
+        windows.close();
+    }
+
+    /**
+     * Parse the next instruction, the address stays on it until advance().
+     */
+    private void decode() {
+        if (decoded) {
+            return;
+        }
+        if (hasNext() == false) {
+            throw new NoSuchElementException("No instruction left");
+        }
+        position = windows.reach(address, MAX_TEXT);
+        window = windows.window();
+        try {
+            byte letter = window.get(position);
+            if (letter != 'A' && letter != 'D' && letter != 'C') {
+                throw error("an instruction");
+            }
+            position = position + 1;
+            processId = 0;
+            dimension = 0;
+            if (letter == 'C') {
+                opcode = Instruction.COMPACTION;
+            } else if (letter == 'D') {
+                opcode = Instruction.DEALLOCATION;
+                expect('(');
+                processId = number();
+                expect(')');
+            } else {
+                opcode = Instruction.ALLOCATION;
+                expect('(');
+                processId = number();
+                expect(',');
+                dimension = number();
+                expect(')');
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw error("the end of the instruction");
+        }
+        following = windows.start() + position;
+        decoded = true;
+    }
+
+    /**
+     * Read a byte after the spaces.
+     * @param expected is the byte that must be there.
+     */
+    private void expect(char expected) {
+        skipSpaces();
+        if (window.get(position) != expected) {
+            throw error("'" + expected + "'");
+        }
+        position = position + 1;
+    }
+
+    /**
+     * @return the int written after the spaces, with an optional minus.
+     */
+    private int number() {
+        skipSpaces();
+        boolean negative = false;
+        if (window.get(position) == '-') {
+            negative = true;
+            position = position + 1;
+        }
+        long value = 0;
+        int first = position;
+        int end = window.limit();
+        while (position < end) {
+            int digit = window.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+            position = position + 1;
+        }
+        int digits = position - first;
+        if (negative) {
+            value = -value;
+        }
+        // more than the digits of an int is an overflow, a long holds 18 of them.
+        if (digits == 0 || digits > 10 || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw error("an int");
+        }
+        return (int) value;
+    }
+
+    private void skipSpaces() {
+        byte current = window.get(position);
+        while (current == ' ' || current == '\t') {
+            position = position + 1;
+            current = window.get(position);
+        }
+    }
+
+    /**
+     * @param expected is what should have been read.
+     * @return the exception for the byte being read.
+     */
+    private IllegalArgumentException error(String expected) {
+        String where = "byte " + (windows.start() + position);
+        if (windows.file() != null) {
+            where = where + " of " + windows.file();
+        }
+        return new IllegalArgumentException("Expected " + expected + " at " + where);
+    }
+}
@@ -0,0 +1,165 @@
+package se.lnu.os.ht24.a2.required;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+import se.lnu.os.ht24.a2.provided.instructions.AllocationInstruction;
+import se.lnu.os.ht24.a2.provided.instructions.DeallocationInstruction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write instructions to a binary trace file, read back by a MappedTraceReader. The file is in big endian:
+ * - the int MAGIC, then the long number of instructions, -1 until the writer is closed,
+ * - one record per instruction: the opcode on a byte, then for an allocation the id of the process and the
+ *   dimension, for a deallocation the id of the process, and nothing for a compaction.
+ * The ints are zigzag varints (7 bits per byte, the high bit set when another byte follows), so the small ids and
+ * dimensions of a trace take 1 or 2 bytes and a record is at most 11 bytes.
+ * The records are written by blocks of 64 KB. If the writer is never closed, the file has the header and the
+ * records of the blocks already written, the last ones still in the buffer are lost.
+ */
+public class TraceWriter implements Closeable {
+
+    static final int MAGIC = 0x54524331;
+    static final int HEADER = 12;
+    static final int MAX_RECORD = 11;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private long count;
+
+    /**
+     * Create the file, or empty it if it exists, and write the header right away.
+     * @param file is the file of the trace.
+     */
+    public TraceWriter(Path file) {
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.putInt(MAGIC);
+        buffer.putLong(-1);
+        flush();
+    }
+
+    /**
+     * Add an instruction at the end of the trace.
+     * @param opcode is the opcode of the instruction, one of the constants of Instruction.
+     * @param processId is the id of the process, ignored for a compaction.
+     * @param dimension is the dimension of the block, ignored for a deallocation or a compaction.
+     */
+    public void write(int opcode, int processId, int dimension) {
+        if (opcode < Instruction.ALLOCATION || opcode > Instruction.COMPACTION) {
+            throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+        if (buffer.remaining() < MAX_RECORD) {
+            flush();
+        }
+        buffer.put((byte) opcode);
+        if (opcode != Instruction.COMPACTION) {
+            putVarint(processId);
+        }
+        if (opcode == Instruction.ALLOCATION) {
+            putVarint(dimension);
+        }
+        count = count + 1;
+    }
+
+    public void writeAllocation(int processId, int dimension) {
+        write(Instruction.ALLOCATION, processId, dimension);
+    }
+
+    public void writeDeallocation(int processId) {
+        write(Instruction.DEALLOCATION, processId, 0);
+    }
+
+    public void writeCompaction() {
+        write(Instruction.COMPACTION, 0, 0);
+    }
+
+    /**
+     * Add an instruction at the end of the trace.
+     * @param instruction is an allocation, a deallocation or a compaction.
+     */
+    public void write(Instruction instruction) {
+        switch (instruction.getOpcode()) {
+            case Instruction.ALLOCATION:
+                AllocationInstruction allocation = (AllocationInstruction) instruction;
+                writeAllocation(allocation.getProcessId(), allocation.getDimension());
+                break;
+            case Instruction.DEALLOCATION:
+                writeDeallocation(((DeallocationInstruction) instruction).getProcessId());
+                break;
+            case Instruction.COMPACTION:
+                writeCompaction();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown instruction " + instruction);
+        }
+    }
+
+    /**
+     * Add every instruction left in a source, the source is read to its end.
+     * @param source is the source of the instructions.
+     */
+    public void writeAll(InstructionSource source) {
+        while (source.hasNext()) {
+            write(source.opcode(), source.processId(), source.dimension());
+            source.advance();
+        }
+    }
+
+    /**
+     * @return the number of instructions written.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Write what is left in the buffer and the number of instructions in the header, then close the file.
+     */
+    @Override
+    public void close() {
+        if (channel.isOpen() == false) {
+            return;
+        }
+        try {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+            header.putLong(0, count);
+            channel.write(header, Integer.BYTES);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void putVarint(int value) {
+        // zigzag, so that the small negative values are short too.
+        int bits = (value << 1) ^ (value >> 31);
+        while ((bits & ~0x7F) != 0) {
+            buffer.put((byte) ((bits & 0x7F) | 0x80));
+            bits = bits >>> 7;
+        }
+        buffer.put((byte) bits);
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package se.lnu.os.ht24.a2.required;
+
+import java.util.Objects;
+
+/**
+ * The interval of a block or of a hole with 64 bits addresses, for the memories bigger than what an int can address.
+ */
+public class WideProcessInterval {
+
+    private final long lowAddress;
+    private final long highAddress;
+
+    public WideProcessInterval(long lowAddress, long highAddress) {
+        if (lowAddress > highAddress) {
+            throw new RuntimeException("Interval ends are incorrect");
+        }
+        this.lowAddress = lowAddress;
+        this.highAddress = highAddress;
+    }
+
+    public long getLowAddress() {
+        return lowAddress;
+    }
+
+    public long getHighAddress() {
+        return highAddress;
+    }
+
+    /**
+     * @return the number of addresses of the interval.
+     */
+    public long length() {
+        return highAddress - lowAddress + 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        WideProcessInterval that = (WideProcessInterval) o;
+        return lowAddress == that.lowAddress && highAddress == that.highAddress;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lowAddress, highAddress);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + lowAddress + "-" + highAddress + ")";
+    }
+}
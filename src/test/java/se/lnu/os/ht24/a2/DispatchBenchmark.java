@@ -0,0 +1,99 @@
+package se.lnu.os.ht24.a2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
+import se.lnu.os.ht24.a2.provided.instructions.AllocationInstruction;
+import se.lnu.os.ht24.a2.provided.instructions.CompactInstruction;
+import se.lnu.os.ht24.a2.provided.instructions.DeallocationInstruction;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the instanceof chain that chose what to do with an instruction before, with the switch on its opcode.
+ * The work done for every instruction is the same small sum, so only the dispatch is measured.
+ * It is not a test, run it with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=se.lnu.os.ht24.a2.DispatchBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private Instruction[] instructions;
+
+    @Setup
+    public void setup() {
+        // the kinds are mixed like in a trace, so the chain can not guess the class.
+        Random random = new Random(42);
+        instructions = new Instruction[1 << 16];
+        for (int i = 0; i < instructions.length; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                instructions[i] = new AllocationInstruction(i, random.nextInt(100) + 1);
+            } else if (kind < 9) {
+                instructions[i] = new DeallocationInstruction(random.nextInt(i + 1));
+            } else {
+                instructions[i] = new CompactInstruction();
+            }
+        }
+    }
+
+    @Benchmark
+    public long instanceofChain() {
+        long sum = 0;
+        for (Instruction instruction : instructions) {
+            if (instruction instanceof AllocationInstruction) {
+                AllocationInstruction allocation = (AllocationInstruction) instruction;
+                sum = sum + allocation.getProcessId() + allocation.getDimension();
+            } else if (instruction instanceof DeallocationInstruction) {
+                sum = sum - ((DeallocationInstruction) instruction).getProcessId();
+            } else {
+                sum = sum + 1;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long opcodeSwitch() {
+        long sum = 0;
+        for (Instruction instruction : instructions) {
+            switch (instruction.getOpcode()) {
+                case Instruction.ALLOCATION:
+                    AllocationInstruction allocation = (AllocationInstruction) instruction;
+                    sum = sum + allocation.getProcessId() + allocation.getDimension();
+                    break;
+                case Instruction.DEALLOCATION:
+                    sum = sum - ((DeallocationInstruction) instruction).getProcessId();
+                    break;
+                case Instruction.COMPACTION:
+                    sum = sum + 1;
+                    break;
+                default:
+                    sum = sum - 1;
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DispatchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -3,6 +3,7 @@ package se.lnu.os.ht24.a2;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import se.lnu.os.ht24.a2.provided.abstract_.Instruction;
 import se.lnu.os.ht24.a2.provided.data.ProcessInterval;
@@ -12,13 +13,31 @@ import se.lnu.os.ht24.a2.provided.instructions.AllocationInstruction;
 import se.lnu.os.ht24.a2.provided.instructions.CompactInstruction;
 import se.lnu.os.ht24.a2.provided.instructions.DeallocationInstruction;
 import se.lnu.os.ht24.a2.provided.interfaces.SimulationInstance;
+import se.lnu.os.ht24.a2.required.BackendType;
+import se.lnu.os.ht24.a2.required.CompactionMode;
+import se.lnu.os.ht24.a2.required.InstructionSource;
+import se.lnu.os.ht24.a2.required.InstructionStream;
+import se.lnu.os.ht24.a2.required.MappedTraceReader;
 import se.lnu.os.ht24.a2.required.MemoryImpl;
+import se.lnu.os.ht24.a2.required.MemoryListener;
 import se.lnu.os.ht24.a2.required.SimulationInstanceImpl;
-
+import se.lnu.os.ht24.a2.required.SimulationListener;
+import se.lnu.os.ht24.a2.required.StrategyRunner;
+import se.lnu.os.ht24.a2.required.TraceParser;
+import se.lnu.os.ht24.a2.required.TraceWriter;
+import se.lnu.os.ht24.a2.required.WideProcessInterval;
+
+import java.io.Closeable;
+import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -3376,5 +3395,1426 @@ void NegativeIDstressTestCompaction() {
     assertTrue(sim.getMemory().fragmentation() < 0.05); // Minimal fragmentation
 }
 
-}
+    /**
+     * The memory only keeps the blocks and the holes, so a big memory does not cost more than a small one.
+     */
+    @Test
+    void bigMemoryIntervalTest() {
+        Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+            new AllocationInstruction(1, 1_000_000),
+            new AllocationInstruction(2, 5),
+            new AllocationInstruction(3, 2_000_000),
+            new DeallocationInstruction(2),
+            new AllocationInstruction(4, 3),
+            new DeallocationInstruction(1),
+            new CompactInstruction()
+        ));
+
+        SimulationInstance sim = new SimulationInstanceImpl(
+            instructions,
+            new MemoryImpl(100_000_000),
+            StrategyType.BEST_FIT
+        );
+
+        sim.runAll();
+
+        assertEquals(0, sim.getExceptions().size());
+        assertEquals(new ProcessInterval(0, 2), sim.getMemory().getProcessInterval(4));
+        assertEquals(new ProcessInterval(3, 2_000_002), sim.getMemory().getProcessInterval(3));
+        assertEquals(1, sim.getMemory().freeSlots().size());
+        assertTrue(sim.getMemory().freeSlots().contains(new ProcessInterval(2_000_003, 99_999_999)));
+        assertEquals(0.0, sim.getMemory().fragmentation());
+    }
+
+    /**
+     * The dense backend must place the blocks exactly like the interval one, for every strategy.
+     */
+    @Test
+    void denseBackendTest() {
+        for (StrategyType strategy : StrategyType.values()) {
+            Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+                new AllocationInstruction(1, 10),
+                new AllocationInstruction(2, 4),
+                new AllocationInstruction(3, 20),
+                new AllocationInstruction(4, 6),
+                new DeallocationInstruction(1),
+                new DeallocationInstruction(3),
+                new AllocationInstruction(5, 8),
+                new AllocationInstruction(6, 30),
+                new DeallocationInstruction(7)
+            ));
+            SimulationInstance interval = new SimulationInstanceImpl(
+                new ArrayDeque<>(instructions),
+                new MemoryImpl(50, BackendType.INTERVAL),
+                strategy
+            );
+            SimulationInstance dense = new SimulationInstanceImpl(
+                instructions,
+                new MemoryImpl(50, BackendType.DENSE),
+                strategy
+            );
+
+            interval.runAll();
+            dense.runAll();
+
+            assertEquals(interval.getExceptions(), dense.getExceptions());
+            assertEquals(interval.getMemory(), dense.getMemory());
+            assertEquals(interval.getMemory().freeSlots(), dense.getMemory().freeSlots());
+            assertEquals(interval.getMemory().fragmentation(), dense.getMemory().fragmentation());
+            assertEquals(interval.getMemory().neighboringProcesses(4), dense.getMemory().neighboringProcesses(4));
+        }
+    }
+
+    /**
+     * The process index must follow the blocks when they are freed and moved by a compaction.
+     */
+    @Test
+    void processIndexTest() {
+        for (BackendType backendType : BackendType.values()) {
+            Queue<Instruction> instructions = new ArrayDeque<>();
+            for (int i = 0; i < 2000; i++) {
+                instructions.add(new AllocationInstruction(i, 2));
+            }
+            for (int i = 0; i < 2000; i += 2) {
+                instructions.add(new DeallocationInstruction(i));
+            }
+            instructions.add(new CompactInstruction());
+
+            SimulationInstance sim = new SimulationInstanceImpl(
+                instructions,
+                new MemoryImpl(5000, backendType),
+                StrategyType.FIRST_FIT
+            );
+
+            sim.runAll();
+
+            assertEquals(0, sim.getExceptions().size());
+            assertEquals(1000, sim.getMemory().processes().size());
+            for (int i = 0; i < 2000; i++) {
+                if (i % 2 == 0) {
+                    assertFalse(sim.getMemory().containsProcess(i));
+                    assertEquals(0, sim.getMemory().processSize(i));
+                    assertNull(sim.getMemory().getProcessInterval(i));
+                } else {
+                    assertTrue(sim.getMemory().containsProcess(i));
+                    assertEquals(2, sim.getMemory().processSize(i));
+                    assertEquals(new ProcessInterval(i - 1, i), sim.getMemory().getProcessInterval(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Best fit on a memory with many holes: the smallest hole big enough wins, the lowest address on a tie.
+     */
+    @Test
+    void bestFitManyHolesTest() {
+        Queue<Instruction> instructions = new ArrayDeque<>();
+        // holes of dimension 3, 5, 4, 5, 3, 4, 6, 4 separated by blocks of dimension 1.
+        int[] holes = {3, 5, 4, 5, 3, 4, 6, 4};
+        int id = 1;
+        for (int hole : holes) {
+            instructions.add(new AllocationInstruction(id * 100, hole));
+            instructions.add(new AllocationInstruction(id, 1));
+            id++;
+        }
+        for (int i = 1; i < id; i++) {
+            instructions.add(new DeallocationInstruction(i * 100));
+        }
+        instructions.add(new AllocationInstruction(1000, 4));
+        instructions.add(new AllocationInstruction(1001, 4));
+        instructions.add(new AllocationInstruction(1002, 5));
+        instructions.add(new AllocationInstruction(1003, 3));
+
+        SimulationInstance sim = new SimulationInstanceImpl(
+            instructions,
+            new MemoryImpl(100),
+            StrategyType.BEST_FIT
+        );
+
+        sim.runAll();
+
+        assertEquals(0, sim.getExceptions().size());
+        assertEquals(new ProcessInterval(10, 13), sim.getMemory().getProcessInterval(1000));
+        assertEquals(new ProcessInterval(25, 28), sim.getMemory().getProcessInterval(1001));
+        assertEquals(new ProcessInterval(4, 8), sim.getMemory().getProcessInterval(1002));
+        assertEquals(new ProcessInterval(0, 2), sim.getMemory().getProcessInterval(1003));
+    }
+
+    /**
+     * Worst fit on a memory with many holes: the biggest hole wins, the lowest address on a tie, and a failed
+     * allocation reports the biggest hole left.
+     */
+    @Test
+    void worstFitManyHolesTest() {
+        Queue<Instruction> instructions = new ArrayDeque<>();
+        // holes of dimension 3, 6, 4, 6, 2 separated by blocks of dimension 1, the memory ends with a block.
+        int[] holes = {3, 6, 4, 6, 2};
+        int id = 1;
+        for (int hole : holes) {
+            instructions.add(new AllocationInstruction(id * 100, hole));
+            instructions.add(new AllocationInstruction(id, 1));
+            id++;
+        }
+        for (int i = 1; i < id; i++) {
+            instructions.add(new DeallocationInstruction(i * 100));
+        }
+        instructions.add(new AllocationInstruction(1000, 2));
+        instructions.add(new AllocationInstruction(1001, 2));
+        instructions.add(new AllocationInstruction(1002, 5));
+        instructions.add(new AllocationInstruction(1003, 4));
+
+        SimulationInstance sim = new SimulationInstanceImpl(
+            instructions,
+            new MemoryImpl(26),
+            StrategyType.WORST_FIT
+        );
+
+        sim.runAll();
+
+        assertEquals(new ProcessInterval(4, 5), sim.getMemory().getProcessInterval(1000));
+        assertEquals(new ProcessInterval(16, 17), sim.getMemory().getProcessInterval(1001));
+        assertFalse(sim.getMemory().containsProcess(1002));
+        assertEquals(new ProcessInterval(6, 9), sim.getMemory().getProcessInterval(1003));
+        assertEquals(1, sim.getExceptions().size());
+        assertEquals(4, sim.getExceptions().get(0).getAllocatableMemoryAtException());
+    }
+
+    /**
+     * First fit on a memory with many holes: the hole with the lowest address big enough wins, even when it is
+     * far from the beginning of the memory.
+     */
+    @Test
+    void firstFitManyHolesTest() {
+        for (BackendType backendType : BackendType.values()) {
+            Queue<Instruction> instructions = new ArrayDeque<>();
+            // 500 blocks of dimension 7, then free one out of two: holes of dimension 7 every 14 addresses.
+            for (int i = 0; i < 500; i++) {
+                instructions.add(new AllocationInstruction(i, 7));
+            }
+            for (int i = 0; i < 500; i += 2) {
+                instructions.add(new DeallocationInstruction(i));
+            }
+            // free 301 too, which joins the holes of 300 and 302 in a hole of dimension 21 at address 2100.
+            instructions.add(new DeallocationInstruction(301));
+            instructions.add(new AllocationInstruction(1000, 8));
+            instructions.add(new AllocationInstruction(1001, 7));
+            instructions.add(new AllocationInstruction(1002, 13));
+            instructions.add(new AllocationInstruction(1003, 30));
+
+            SimulationInstance sim = new SimulationInstanceImpl(
+                instructions,
+                new MemoryImpl(4000, backendType),
+                StrategyType.FIRST_FIT
+            );
+
+            sim.runAll();
+
+            assertEquals(0, sim.getExceptions().size());
+            assertEquals(new ProcessInterval(2100, 2107), sim.getMemory().getProcessInterval(1000));
+            assertEquals(new ProcessInterval(0, 6), sim.getMemory().getProcessInterval(1001));
+            assertEquals(new ProcessInterval(2108, 2120), sim.getMemory().getProcessInterval(1002));
+            assertEquals(new ProcessInterval(3500, 3529), sim.getMemory().getProcessInterval(1003));
+        }
+    }
+
+    /**
+     * Fragmentation sampled after every instruction, as it is done to draw fragmentation curves.
+     */
+    @Test
+    void fragmentationCurveTest() {
+        String[] expected = {"0.00", "0.00", "0.00", "0.50", "0.33", "0.45", "0.00"};
+        for (BackendType backendType : BackendType.values()) {
+            Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+                new AllocationInstruction(1, 5),
+                new AllocationInstruction(2, 5),
+                new AllocationInstruction(3, 5),
+                new DeallocationInstruction(2),
+                new DeallocationInstruction(1),
+                new AllocationInstruction(4, 4),
+                new CompactInstruction()
+            ));
+            SimulationInstance sim = new SimulationInstanceImpl(
+                instructions,
+                new MemoryImpl(20, backendType),
+                StrategyType.FIRST_FIT
+            );
+
+            for (String fragmentation : expected) {
+                sim.run(1);
+                assertEquals(fragmentation, df.format(sim.getMemory().fragmentation()));
+            }
+        }
+    }
+
+    /**
+     * The free slots are given again without being rebuilt until the memory changes.
+     */
+    @Test
+    void freeSlotsCacheTest() {
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(130, backendType);
+            memory.AllocateBlock(1, 60, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(2, 10, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(3, 58, StrategyType.FIRST_FIT);
+            memory.unAllocate(2);
+
+            Set<ProcessInterval> testFreeSlots = new HashSet<>(Arrays.asList(
+                new ProcessInterval(60, 69),
+                new ProcessInterval(128, 129)
+            ));
+            Set<ProcessInterval> freeSlots = memory.freeSlots();
+            assertEquals(testFreeSlots, freeSlots);
+            assertSame(freeSlots, memory.freeSlots());
+            assertThrows(UnsupportedOperationException.class, () -> freeSlots.add(new ProcessInterval(0, 0)));
+
+            // a failed allocation does not change the memory, a deallocation does.
+            assertFalse(memory.AllocateBlock(4, 11, StrategyType.FIRST_FIT));
+            assertSame(freeSlots, memory.freeSlots());
+            memory.unAllocate(1);
+            testFreeSlots = new HashSet<>(Arrays.asList(
+                new ProcessInterval(0, 69),
+                new ProcessInterval(128, 129)
+            ));
+            assertEquals(testFreeSlots, memory.freeSlots());
+            assertNotSame(freeSlots, memory.freeSlots());
+
+            memory.compact();
+            assertEquals(Collections.singleton(new ProcessInterval(58, 129)), memory.freeSlots());
+
+            // printing the memory reads the same cached set.
+            int[] collected = new int[1];
+            memory.setListener(new MemoryListener() {
+                @Override
+                public void freeSlotsCollected(int slots) {
+                    collected[0]++;
+                }
+            });
+            memory.unAllocate(3);
+            assertTrue(memory.toString().contains("(0-129) --> EMPTY"));
+            assertEquals(1, collected[0]);
+            memory.toString();
+            memory.freeSlots();
+            assertEquals(1, collected[0]);
+        }
+    }
+
+    /**
+     * The neighbours follow the blocks through splits of holes, merges of holes and compactions.
+     */
+    @Test
+    void neighborLinksTest() {
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(40, backendType);
+            memory.AllocateBlock(1, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(3, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(4, 5, StrategyType.FIRST_FIT);
+            assertEquals(new HashSet<>(Arrays.asList(1, 3)), memory.neighboringProcesses(2));
+
+            // free 2 and 3, then split the hole they leave in two blocks.
+            memory.unAllocate(2);
+            memory.unAllocate(3);
+            assertEquals(Collections.emptySet(), memory.neighboringProcesses(1));
+            memory.AllocateBlock(5, 3, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(6, 7, StrategyType.FIRST_FIT);
+            assertEquals(new HashSet<>(Arrays.asList(1, 6)), memory.neighboringProcesses(5));
+            assertEquals(new HashSet<>(Arrays.asList(5, 4)), memory.neighboringProcesses(6));
+
+            memory.unAllocate(1);
+            memory.unAllocate(6);
+            assertEquals(Collections.emptySet(), memory.neighboringProcesses(5));
+            memory.compact();
+            assertEquals(Collections.singleton(4), memory.neighboringProcesses(5));
+            assertEquals(Collections.singleton(5), memory.neighboringProcesses(4));
+        }
+    }
+
+    /**
+     * A compaction counts the units of the blocks it moves, the blocks already in place stay where they are.
+     */
+    @Test
+    void compactMovedUnitsTest() {
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(100, backendType);
+            memory.AllocateBlock(1, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(3, 6, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(4, 70, StrategyType.FIRST_FIT);
+            memory.unAllocate(2);
+
+            assertEquals(76, memory.compact());
+            assertEquals(new ProcessInterval(0, 4), memory.getProcessInterval(1));
+            assertEquals(new ProcessInterval(5, 10), memory.getProcessInterval(3));
+            assertEquals(new ProcessInterval(11, 80), memory.getProcessInterval(4));
+            // nothing to move the second time.
+            assertEquals(0, memory.compact());
+
+            memory.unAllocate(4);
+            assertEquals(0, memory.compact());
+            memory.unAllocate(1);
+            assertEquals(6, memory.compact());
+            assertEquals(Collections.singleton(new ProcessInterval(6, 99)), memory.freeSlots());
+        }
+    }
+
+    /**
+     * A partial compaction only moves the blocks between the holes that give the cheapest hole big enough.
+     */
+    @Test
+    void partialCompactTest() {
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(40, backendType);
+            memory.AllocateBlock(1, 10, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(2, 2, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(3, 10, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(4, 3, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(5, 1, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(6, 4, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(7, 10, StrategyType.FIRST_FIT);
+            // holes (10-11), (22-24) and (26-29).
+            memory.unAllocate(2);
+            memory.unAllocate(4);
+            memory.unAllocate(6);
+
+            assertEquals(0, memory.compact(4));
+            assertEquals(-1, memory.compact(10));
+
+            // joining the last two holes only moves the block 5.
+            assertEquals(1, memory.compact(7));
+            assertEquals(new ProcessInterval(22, 22), memory.getProcessInterval(5));
+            assertEquals(new ProcessInterval(12, 21), memory.getProcessInterval(3));
+            Set<ProcessInterval> testFreeSlots = new HashSet<>(Arrays.asList(
+                new ProcessInterval(10, 11),
+                new ProcessInterval(23, 29)
+            ));
+            assertEquals(testFreeSlots, memory.freeSlots());
+
+            assertEquals(11, memory.compact(9));
+            assertEquals(new ProcessInterval(10, 19), memory.getProcessInterval(3));
+            assertEquals(new ProcessInterval(20, 20), memory.getProcessInterval(5));
+            assertEquals(new ProcessInterval(30, 39), memory.getProcessInterval(7));
+            assertEquals(Collections.singleton(new ProcessInterval(21, 29)), memory.freeSlots());
+        }
+    }
+
+    /**
+     * With the on demand compaction, a failed allocation compacts what it needs and is tried again.
+     */
+    @Test
+    void onDemandCompactionTest() {
+        for (CompactionMode compactionMode : CompactionMode.values()) {
+            Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+                new AllocationInstruction(1, 10),
+                new AllocationInstruction(2, 5),
+                new AllocationInstruction(3, 10),
+                new AllocationInstruction(4, 5),
+                new AllocationInstruction(5, 10),
+                new DeallocationInstruction(2),
+                new DeallocationInstruction(4),
+                new AllocationInstruction(6, 8),
+                new AllocationInstruction(7, 20)
+            ));
+            SimulationInstance sim = new SimulationInstanceImpl(
+                instructions,
+                new MemoryImpl(40, BackendType.INTERVAL),
+                StrategyType.FIRST_FIT,
+                compactionMode
+            );
+
+            sim.runAll();
+
+            if (compactionMode == CompactionMode.MANUAL) {
+                assertEquals(2, sim.getExceptions().size());
+                assertNull(sim.getMemory().getProcessInterval(6));
+                assertEquals(5, sim.getExceptions().get(1).getAllocatableMemoryAtException());
+            } else {
+                // the block 3 slides down, the block 1 and 5 stay where they are.
+                // the block 7 still fails, there is not enough free memory for it.
+                assertEquals(1, sim.getExceptions().size());
+                assertEquals(new ProcessInterval(0, 9), sim.getMemory().getProcessInterval(1));
+                assertEquals(new ProcessInterval(10, 19), sim.getMemory().getProcessInterval(3));
+                assertEquals(new ProcessInterval(20, 27), sim.getMemory().getProcessInterval(6));
+                assertEquals(new ProcessInterval(30, 39), sim.getMemory().getProcessInterval(5));
+                assertEquals(2, sim.getExceptions().get(0).getAllocatableMemoryAtException());
+            }
+        }
+    }
+
+    /**
+     * A freed block merges with the holes on both sides, and the addresses it leaves do not belong to it anymore.
+     */
+    @Test
+    void releaseMergeTest() {
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(30, backendType);
+            memory.AllocateBlock(1, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(3, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(4, 5, StrategyType.FIRST_FIT);
+
+            memory.unAllocate(2);
+            assertEquals(Collections.singleton(3), memory.neighboringProcesses(4));
+            assertEquals(Collections.emptySet(), memory.neighboringProcesses(1));
+            assertEquals(Collections.singleton(4), memory.neighboringProcesses(3));
+
+            // 3 is between two holes, they become one hole with it.
+            memory.unAllocate(3);
+            memory.unAllocate(4);
+            assertEquals(Collections.singleton(new ProcessInterval(5, 29)), memory.freeSlots());
+            assertEquals(25, memory.getBiggestMemoryAvaible());
+            assertEquals(0.0, memory.fragmentation());
+
+            // the holes (0-4) and (25-29) have the same dimension, the best fit takes the lowest one.
+            memory.AllocateBlock(5, 20, StrategyType.FIRST_FIT);
+            memory.unAllocate(1);
+            memory.AllocateBlock(6, 4, StrategyType.BEST_FIT);
+            assertEquals(new ProcessInterval(0, 3), memory.getProcessInterval(6));
+            assertEquals(Collections.emptySet(), memory.neighboringProcesses(6));
+            assertEquals(Collections.emptySet(), memory.neighboringProcesses(5));
+        }
+    }
+
+    /**
+     * Any int is a valid process id, the negative ones included.
+     */
+    @Test
+    void negativeIdsTest() {
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(20, backendType);
+            assertTrue(memory.AllocateBlock(-1, 5, StrategyType.FIRST_FIT));
+            assertTrue(memory.AllocateBlock(-2, 5, StrategyType.FIRST_FIT));
+            assertTrue(memory.AllocateBlock(Integer.MIN_VALUE, 5, StrategyType.FIRST_FIT));
+            assertFalse(memory.AllocateBlock(-1, 5, StrategyType.FIRST_FIT));
+
+            assertEquals(new HashSet<>(Arrays.asList(-1, Integer.MIN_VALUE)), memory.neighboringProcesses(-2));
+            assertEquals(Collections.singleton(new ProcessInterval(15, 19)), memory.freeSlots());
+
+            assertTrue(memory.unAllocate(-2));
+            assertFalse(memory.containsProcess(-2));
+            assertEquals(Collections.emptySet(), memory.neighboringProcesses(-1));
+            memory.compact();
+            assertEquals(new ProcessInterval(5, 9), memory.getProcessInterval(Integer.MIN_VALUE));
+            assertEquals(Collections.singleton(new ProcessInterval(10, 19)), memory.freeSlots());
+        }
+    }
+
+    /**
+     * A memory of every address an int can count, and one of 2^40 addresses with the wide intervals.
+     */
+    @Test
+    void hugeMemoryTest() {
+        MemoryImpl memory = new MemoryImpl(Integer.MAX_VALUE);
+        assertTrue(memory.AllocateBlock(1, 1_000_000_000, StrategyType.FIRST_FIT));
+        assertTrue(memory.AllocateBlock(2, 1_000_000_000, StrategyType.WORST_FIT));
+        assertEquals(new ProcessInterval(1_000_000_000, 1_999_999_999), memory.getProcessInterval(2));
+        assertEquals(Collections.singleton(new ProcessInterval(2_000_000_000, Integer.MAX_VALUE - 1)), memory.freeSlots());
+        memory.unAllocate(1);
+        assertEquals(1_000_000_000, memory.compact());
+        assertEquals(Integer.MAX_VALUE - 1_000_000_000, memory.getBiggestMemoryAvaible());
+
+        long size = 1L << 40;
+        MemoryImpl wideMemory = new MemoryImpl(size);
+        assertTrue(wideMemory.AllocateBlock(1, 1L << 35, StrategyType.FIRST_FIT));
+        assertTrue(wideMemory.AllocateBlock(2, 10, StrategyType.FIRST_FIT));
+        assertTrue(wideMemory.AllocateBlock(3, 1L << 39, StrategyType.BEST_FIT));
+        assertFalse(wideMemory.AllocateBlock(4, size, StrategyType.FIRST_FIT));
+        assertEquals(new WideProcessInterval(1L << 35, (1L << 35) + 9), wideMemory.getWideProcessInterval(2));
+        assertEquals(new WideProcessInterval((1L << 35) + 10, (1L << 35) + 9 + (1L << 39)), wideMemory.getWideProcessInterval(3));
+        assertEquals(10, wideMemory.processSize(2));
+        // the block 3 can not be given with int addresses.
+        assertThrows(ArithmeticException.class, () -> wideMemory.getProcessInterval(3));
+
+        wideMemory.unAllocate(1);
+        assertEquals(Integer.MAX_VALUE, wideMemory.getBiggestMemoryAvaible());
+        assertEquals(10 + (1L << 39), wideMemory.compact());
+        assertEquals(Collections.singleton(new WideProcessInterval(10 + (1L << 39), size - 1)), wideMemory.wideFreeSlots());
+        assertEquals(0.0, wideMemory.fragmentation());
+    }
+
+    /**
+     * The off heap backend runs the big memory simulation like the interval one.
+     */
+    @Test
+    void offHeapBigMemoryTest() {
+        Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+            new AllocationInstruction(1, 1_000_000),
+            new AllocationInstruction(2, 5),
+            new AllocationInstruction(3, 2_000_000),
+            new DeallocationInstruction(2),
+            new AllocationInstruction(4, 3),
+            new DeallocationInstruction(1),
+            new CompactInstruction()
+        ));
+
+        SimulationInstance sim = new SimulationInstanceImpl(
+            instructions,
+            new MemoryImpl(10_000_000, BackendType.OFF_HEAP),
+            StrategyType.BEST_FIT
+        );
+
+        sim.runAll();
+
+        assertEquals(0, sim.getExceptions().size());
+        assertEquals(new ProcessInterval(0, 2), sim.getMemory().getProcessInterval(4));
+        assertEquals(new ProcessInterval(3, 2_000_002), sim.getMemory().getProcessInterval(3));
+        assertEquals(Collections.singleton(4), sim.getMemory().neighboringProcesses(3));
+        assertEquals(Collections.singleton(new ProcessInterval(2_000_003, 9_999_999)), sim.getMemory().freeSlots());
+    }
+
+    /**
+     * The memory mapped in a file gives the same results, and the file keeps the layout once the simulation is over.
+     */
+    @Test
+    void mappedFileTest(@TempDir Path folder) throws IOException {
+        Path file = folder.resolve("memory.bin");
+        Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+            new AllocationInstruction(1, 10),
+            new AllocationInstruction(2, 7),
+            new AllocationInstruction(3, 5),
+            new DeallocationInstruction(1),
+            new AllocationInstruction(4, 3),
+            new DeallocationInstruction(3)
+        ));
+        SimulationInstanceImpl sim = new SimulationInstanceImpl(
+            instructions,
+            new MemoryImpl(30, file),
+            StrategyType.FIRST_FIT
+        );
+
+        sim.runAll();
+
+        assertEquals(new ProcessInterval(10, 16), sim.getMemory().getProcessInterval(2));
+        assertEquals(new ProcessInterval(0, 2), sim.getMemory().getProcessInterval(4));
+        // closing the simulation closes the file of its memory, the layout is in the file.
+        sim.close();
+
+        // header, then one bit per address, then the owners from the first multiple of 8.
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        assertEquals(0x4D454D31, buffer.getInt(0));
+        assertEquals(30, buffer.getInt(4));
+        for (int address = 0; address < 30; address++) {
+            boolean taken = (buffer.get(8 + address / 8) & (1 << (address % 8))) != 0;
+            boolean expected = address <= 2 || (address >= 10 && address <= 16);
+            assertEquals(expected, taken);
+            if (taken) {
+                assertEquals(address <= 2 ? 4 : 2, buffer.getInt(16 + 4 * address));
+            }
+        }
+    }
+
+    /**
+     * A fork goes on with another strategy from the same state, and the two simulations do not see each other.
+     */
+    @Test
+    void forkTest() {
+        for (BackendType backendType : BackendType.values()) {
+            Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+                new AllocationInstruction(1, 10),
+                new AllocationInstruction(2, 8),
+                new AllocationInstruction(3, 5),
+                new AllocationInstruction(4, 4),
+                new AllocationInstruction(5, 13),
+                new DeallocationInstruction(2),
+                new DeallocationInstruction(4),
+                new AllocationInstruction(6, 3),
+                new AllocationInstruction(7, 50)
+            ));
+            SimulationInstanceImpl sim = new SimulationInstanceImpl(
+                instructions,
+                new MemoryImpl(40, backendType),
+                StrategyType.FIRST_FIT
+            );
+
+            sim.run(7);
+            SimulationInstanceImpl fork = sim.fork(StrategyType.BEST_FIT);
+            sim.runAll();
+            fork.run(1);
+
+            assertEquals(new ProcessInterval(10, 12), sim.getMemory().getProcessInterval(6));
+            assertEquals(new ProcessInterval(23, 25), fork.getMemory().getProcessInterval(6));
+            assertEquals(1, sim.getExceptions().size());
+            assertEquals(0, fork.getExceptions().size());
+            assertEquals(1, fork.getInstructions().size());
+            assertEquals(StrategyType.BEST_FIT, fork.getStrategyType());
+        }
+    }
+
+    /**
+     * A snapshot keeps the layout it was taken with, whatever happens to the memory, and the other way around.
+     */
+    @Test
+    void snapshotTest() {
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(20, backendType);
+            memory.AllocateBlock(1, 5, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+            MemoryImpl snapshot = memory.snapshot();
+            MemoryImpl second = memory.snapshot();
+
+            memory.unAllocate(1);
+            memory.compact();
+            assertEquals(new ProcessInterval(0, 4), memory.getProcessInterval(2));
+            assertEquals(new ProcessInterval(5, 9), snapshot.getProcessInterval(2));
+            assertEquals(new ProcessInterval(0, 4), snapshot.getProcessInterval(1));
+
+            snapshot.AllocateBlock(3, 10, StrategyType.FIRST_FIT);
+            assertFalse(memory.containsProcess(3));
+            assertFalse(second.containsProcess(3));
+            assertEquals(Collections.singleton(new ProcessInterval(10, 19)), second.freeSlots());
+            assertEquals(Collections.emptySet(), snapshot.freeSlots());
+
+            // a snapshot of a snapshot.
+            MemoryImpl third = second.snapshot();
+            second.unAllocate(2);
+            assertTrue(third.containsProcess(2));
+            assertEquals(Collections.singleton(1), third.neighboringProcesses(2));
+        }
+    }
+
+    /**
+     * Two memories are equal when they have the same blocks at the same place, in both directions and whatever the
+     * backends and the way they got there.
+     */
+    @Test
+    void equalsTest() {
+        MemoryImpl interval = new MemoryImpl(30, BackendType.INTERVAL);
+        interval.AllocateBlock(1, 5, StrategyType.FIRST_FIT);
+        interval.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+        interval.AllocateBlock(3, 5, StrategyType.FIRST_FIT);
+        interval.unAllocate(1);
+        interval.compact();
+
+        MemoryImpl dense = new MemoryImpl(30, BackendType.DENSE);
+        dense.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+        dense.AllocateBlock(3, 5, StrategyType.FIRST_FIT);
+        assertEquals(interval, dense);
+        assertEquals(dense, interval);
+        assertEquals(interval.hashCode(), dense.hashCode());
+
+        // one more process in one of them.
+        dense.AllocateBlock(4, 5, StrategyType.FIRST_FIT);
+        assertNotEquals(interval, dense);
+        assertNotEquals(dense, interval);
+        dense.unAllocate(4);
+        assertEquals(interval, dense);
+
+        // the same blocks at other places, or the same places with other ids.
+        MemoryImpl moved = new MemoryImpl(30, BackendType.OFF_HEAP);
+        moved.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+        moved.AllocateBlock(5, 5, StrategyType.FIRST_FIT);
+        moved.AllocateBlock(3, 5, StrategyType.FIRST_FIT);
+        moved.unAllocate(5);
+        assertNotEquals(interval, moved);
+        MemoryImpl swapped = new MemoryImpl(30);
+        swapped.AllocateBlock(3, 5, StrategyType.FIRST_FIT);
+        swapped.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+        assertNotEquals(interval, swapped);
+        assertNotEquals(interval, new MemoryImpl(31));
+
+        MemoryImpl snapshot = interval.snapshot();
+        assertEquals(interval, snapshot);
+        snapshot.unAllocate(2);
+        assertNotEquals(interval, snapshot);
+    }
+
+    /**
+     * The listeners receive every event of the memory and of the simulation, in order.
+     */
+    @Test
+    void listenerTest() {
+        List<String> events = new ArrayList<>();
+        MemoryImpl memory = new MemoryImpl(20);
+        memory.setListener(new MemoryListener() {
+            @Override
+            public void allocated(int idBlock, long low, long high, StrategyType strategy) {
+                events.add("A" + idBlock + " " + low + "-" + high);
+            }
+
+            @Override
+            public void allocationFailed(int idBlock, long dimension, long biggestHole) {
+                events.add("A" + idBlock + " failed " + dimension + " " + biggestHole);
+            }
 
+            @Override
+            public void freed(int idBlock, long low, long high) {
+                events.add("D" + idBlock + " " + low + "-" + high);
+            }
+
+            @Override
+            public void freeFailed(int idBlock) {
+                events.add("D" + idBlock + " failed");
+            }
+
+            @Override
+            public void compacted(long moved) {
+                events.add("C " + moved);
+            }
+        });
+        Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+            new AllocationInstruction(1, 5),
+            new AllocationInstruction(2, 10),
+            new DeallocationInstruction(1),
+            new AllocationInstruction(3, 10),
+            new DeallocationInstruction(4),
+            new CompactInstruction()
+        ));
+        SimulationInstanceImpl sim = new SimulationInstanceImpl(instructions, memory, StrategyType.FIRST_FIT);
+        List<String> failures = new ArrayList<>();
+        sim.setListener(new SimulationListener() {
+            @Override
+            public void failed(Instruction instruction, InstructionException exception) {
+                failures.add(instruction + " " + exception.getAllocatableMemoryAtException());
+            }
+        });
+
+        sim.runAll();
+
+        assertEquals(Arrays.asList("A1 0-4", "A2 5-14", "D1 0-4", "A3 failed 10 5", "D4 failed", "C 10"), events);
+        assertEquals(Arrays.asList(new AllocationInstruction(3, 10) + " 5", new DeallocationInstruction(4) + " 5"), failures);
+    }
+
+    @Test
+    void instructionStreamTest() {
+        List<Instruction> list = Arrays.asList(
+            new AllocationInstruction(1, 10),
+            new AllocationInstruction(2, 8),
+            new AllocationInstruction(3, 5),
+            new DeallocationInstruction(2),
+            new AllocationInstruction(4, 30),
+            new DeallocationInstruction(7),
+            new CompactInstruction(),
+            new AllocationInstruction(5, 12),
+            new AllocationInstruction(6, 3)
+        );
+        SimulationInstanceImpl objects = new SimulationInstanceImpl(
+            new ArrayDeque<>(list),
+            new MemoryImpl(40),
+            StrategyType.BEST_FIT
+        );
+        InstructionStream stream = InstructionStream.of(list);
+        SimulationInstanceImpl encoded = new SimulationInstanceImpl(
+            stream,
+            new MemoryImpl(40),
+            StrategyType.BEST_FIT
+        );
+
+        // the queue of the simulation is a view of the stream.
+        assertEquals(9, encoded.getInstructions().size());
+        assertEquals(list.toString(), encoded.getInstructions().toString());
+        encoded.run(4);
+        assertEquals(5, stream.remaining());
+        assertEquals(InstructionStream.ALLOCATION, stream.opcode());
+        assertEquals(4, stream.processId());
+        assertEquals(30, stream.dimension());
+        assertInstanceOf(AllocationInstruction.class, encoded.getInstructions().peek());
+        encoded.getInstructions().add(new DeallocationInstruction(1));
+        objects.getInstructions().add(new DeallocationInstruction(1));
+        assertEquals(6, stream.remaining());
+
+        objects.runAll();
+        encoded.runAll();
+        assertEquals(objects.getMemory(), encoded.getMemory());
+        assertEquals(objects.getExceptions(), encoded.getExceptions());
+        assertEquals(2, encoded.getExceptions().size());
+        assertEquals(DeallocationInstruction.class, encoded.getExceptions().get(1).getInstructionType());
+        assertEquals(0, encoded.getInstructions().size());
+        assertNull(encoded.getInstructions().poll());
+        assertThrows(IllegalArgumentException.class, () -> stream.add(new Instruction() { }));
+    }
+
+    @Test
+    void unknownInstructionTest() {
+        Queue<Instruction> instructions = new ArrayDeque<>(Arrays.asList(
+            new AllocationInstruction(1, 10),
+            new AllocationInstruction(2, 10),
+            new DeallocationInstruction(1),
+            new Instruction() { },
+            new CompactInstruction()
+        ));
+        SimulationInstanceImpl sim = new SimulationInstanceImpl(
+            instructions,
+            new MemoryImpl(30),
+            StrategyType.FIRST_FIT
+        );
+
+        assertEquals(Instruction.ALLOCATION, instructions.peek().getOpcode());
+        sim.run(4);
+        // the unknown instruction fails instead of compacting the memory.
+        assertEquals(new ProcessInterval(10, 19), sim.getMemory().getProcessInterval(2));
+        assertEquals(1, sim.getExceptions().size());
+        assertEquals(10, sim.getExceptions().get(0).getAllocatableMemoryAtException());
+        sim.runAll();
+        assertEquals(new ProcessInterval(0, 9), sim.getMemory().getProcessInterval(2));
+        assertEquals(1, sim.getExceptions().size());
+    }
+
+    @Test
+    void streamingSourceTest() {
+        // a generator: the instructions are only made when the simulation reads them.
+        int count = 200000;
+        Iterator<Instruction> generator = IntStream.range(0, count).mapToObj(i -> {
+            if (i % 2 == 0) {
+                return (Instruction) new AllocationInstruction(i / 2, i % 7 + 1);
+            }
+            return new DeallocationInstruction(i / 2);
+        }).iterator();
+        SimulationInstanceImpl sim = new SimulationInstanceImpl(
+            InstructionSource.of(generator),
+            new MemoryImpl(10),
+            StrategyType.FIRST_FIT
+        );
+
+        assertFalse(sim.getInstructions().isEmpty());
+        assertInstanceOf(AllocationInstruction.class, sim.getInstructions().peek());
+        // the number of instructions of a generator is not known, and it can only show its next one.
+        assertEquals(Integer.MAX_VALUE, sim.getInstructions().size());
+        assertEquals("[A(0, 1)]", sim.getInstructions().toString());
+        assertThrows(UnsupportedOperationException.class, () -> sim.fork(StrategyType.BEST_FIT));
+        sim.run(3);
+        assertEquals(new ProcessInterval(0, 2), sim.getMemory().getProcessInterval(1));
+        assertInstanceOf(DeallocationInstruction.class, sim.getInstructions().peek());
+        sim.run(count);
+        assertTrue(sim.getInstructions().isEmpty());
+        assertNull(sim.getInstructions().poll());
+        assertEquals(0, sim.getExceptions().size());
+        assertEquals(Collections.singleton(new ProcessInterval(0, 9)), sim.getMemory().freeSlots());
+
+        // the same instructions from a list give the same simulation as the queue.
+        List<Instruction> list = Arrays.asList(
+            new AllocationInstruction(1, 6),
+            new AllocationInstruction(2, 6),
+            new DeallocationInstruction(1),
+            new AllocationInstruction(3, 3),
+            new DeallocationInstruction(5),
+            new CompactInstruction()
+        );
+        SimulationInstanceImpl objects = new SimulationInstanceImpl(
+            new ArrayDeque<>(list),
+            new MemoryImpl(10),
+            StrategyType.WORST_FIT
+        );
+        SimulationInstanceImpl streamed = new SimulationInstanceImpl(
+            InstructionSource.of(list.iterator()),
+            new MemoryImpl(10),
+            StrategyType.WORST_FIT
+        );
+        objects.runAll();
+        streamed.runAll();
+        assertEquals(objects.getMemory(), streamed.getMemory());
+        assertEquals(objects.getExceptions(), streamed.getExceptions());
+        assertTrue(streamed.toString().contains("List of Remaining Instructions: []"));
+    }
+
+    @Test
+    void binaryTraceTest(@TempDir Path folder) throws IOException {
+        List<Instruction> list = Arrays.asList(
+            new AllocationInstruction(1, 10),
+            new AllocationInstruction(-300, 200),
+            new AllocationInstruction(Integer.MAX_VALUE, 8),
+            new DeallocationInstruction(1),
+            new AllocationInstruction(4, 5),
+            new DeallocationInstruction(Integer.MIN_VALUE),
+            new CompactInstruction(),
+            new AllocationInstruction(5, 0),
+            new AllocationInstruction(6, 12)
+        );
+        Path file = folder.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(file)) {
+            for (Instruction instruction : list) {
+                writer.write(instruction);
+            }
+            assertEquals(9, writer.count());
+        }
+        // header, then 1 + 1 + 1 bytes for A(1, 10), 1 + 2 + 2 for A(-300, 200) ...
+        assertEquals(12 + 3 + 5 + 7 + 2 + 3 + 6 + 1 + 3 + 3, Files.size(file));
+
+        SimulationInstanceImpl objects = new SimulationInstanceImpl(
+            new ArrayDeque<>(list),
+            new MemoryImpl(300),
+            StrategyType.BEST_FIT
+        );
+        try (MappedTraceReader reader = new MappedTraceReader(file)) {
+            assertEquals(9, reader.remaining());
+            assertEquals(Instruction.ALLOCATION, reader.opcode());
+            assertEquals(1, reader.processId());
+            assertEquals(10, reader.dimension());
+            SimulationInstanceImpl mapped = new SimulationInstanceImpl(
+                reader,
+                new MemoryImpl(300),
+                StrategyType.BEST_FIT
+            );
+            assertEquals(9, mapped.getInstructions().size());
+            mapped.run(6);
+            SimulationInstanceImpl fork = mapped.fork(StrategyType.BEST_FIT);
+            objects.runAll();
+            mapped.runAll();
+            fork.runAll();
+            assertEquals(objects.getMemory(), mapped.getMemory());
+            assertEquals(objects.getMemory(), fork.getMemory());
+            assertEquals(objects.getExceptions(), mapped.getExceptions());
+            assertEquals(2, mapped.getExceptions().size());
+            assertFalse(reader.hasNext());
+        }
+
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(IllegalArgumentException.class, () -> new MappedTraceReader(file));
+    }
+
+    @Test
+    void textTraceTest(@TempDir Path folder) throws IOException {
+        List<Instruction> list = Arrays.asList(
+            new AllocationInstruction(1, 10),
+            new AllocationInstruction(-2, 20),
+            new DeallocationInstruction(1),
+            new CompactInstruction(),
+            new AllocationInstruction(Integer.MIN_VALUE, Integer.MAX_VALUE),
+            new DeallocationInstruction(-2)
+        );
+        // one instruction per line, and the printed queue.
+        Path lines = folder.resolve("lines.txt");
+        StringBuilder text = new StringBuilder();
+        for (Instruction instruction : list) {
+            text.append(instruction).append("\r\n");
+        }
+        Files.write(lines, text.toString().getBytes(StandardCharsets.US_ASCII));
+        Path printed = folder.resolve("printed.txt");
+        Files.write(printed, list.toString().getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(list.toString(), TraceParser.parseQueue(lines).toString());
+        assertEquals(list.toString(), TraceParser.parseQueue(printed).toString());
+        InstructionStream stream = TraceParser.parseStream(printed);
+        assertEquals(6, stream.remaining());
+        assertEquals(list.toString(), stream.asQueue().toString());
+
+        // the parser is a source, the simulation reads it while it runs.
+        SimulationInstanceImpl objects = new SimulationInstanceImpl(
+            new ArrayDeque<>(list),
+            new MemoryImpl(50),
+            StrategyType.FIRST_FIT
+        );
+        try (TraceParser parser = new TraceParser(lines)) {
+            SimulationInstanceImpl parsed = new SimulationInstanceImpl(
+                parser,
+                new MemoryImpl(50),
+                StrategyType.FIRST_FIT
+            );
+            objects.runAll();
+            parsed.runAll();
+            assertEquals(objects.getMemory(), parsed.getMemory());
+            assertEquals(objects.getExceptions(), parsed.getExceptions());
+        }
+
+        // a buffer is parsed the same way, with spaces in the instructions.
+        TraceParser buffer = new TraceParser(ByteBuffer.wrap("A( 7 ,3 )\tD(7)C;".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(Instruction.ALLOCATION, buffer.opcode());
+        assertEquals(7, buffer.processId());
+        assertEquals(3, buffer.dimension());
+        buffer.advance();
+        TraceParser copy = buffer.copy();
+        buffer.advance();
+        assertEquals(Instruction.COMPACTION, buffer.opcode());
+        buffer.advance();
+        assertFalse(buffer.hasNext());
+        assertEquals(Instruction.DEALLOCATION, copy.opcode());
+
+        for (String wrong : Arrays.asList("A(1)", "D(x)", "B(1)", "A(1, 2147483648)", "D(1", "A(-, 3)")) {
+            TraceParser parser = new TraceParser(ByteBuffer.wrap(wrong.getBytes(StandardCharsets.US_ASCII)));
+            assertThrows(IllegalArgumentException.class, parser::opcode, wrong);
+        }
+    }
+
+    @Test
+    void strategyRunnerTest() {
+        Random random = new Random(7);
+        InstructionStream trace = new InstructionStream();
+        for (int i = 0; i < 5000; i++) {
+            if (random.nextInt(3) == 0) {
+                trace.addDeallocation(random.nextInt(i + 1));
+            } else if (random.nextInt(50) == 0) {
+                trace.addCompaction();
+            } else {
+                trace.addAllocation(i, random.nextInt(40) + 1);
+            }
+        }
+        for (BackendType backendType : BackendType.values()) {
+            MemoryImpl memory = new MemoryImpl(1000, backendType);
+            memory.AllocateBlock(-1, 100, StrategyType.FIRST_FIT);
+            Map<StrategyType, StrategyRunner.Result> results = new StrategyRunner(trace, memory)
+                .run(EnumSet.allOf(StrategyType.class), 1000);
+
+            assertEquals(Arrays.asList(StrategyType.values()), new ArrayList<>(results.keySet()));
+            for (StrategyType strategy : StrategyType.values()) {
+                // the same trace run alone, with the fragmentation after every 1000 instructions.
+                MemoryImpl alone = new MemoryImpl(1000, backendType);
+                alone.AllocateBlock(-1, 100, StrategyType.FIRST_FIT);
+                SimulationInstanceImpl sim = new SimulationInstanceImpl(trace.copy(), alone, strategy);
+                List<Double> curve = new ArrayList<>();
+                curve.add(alone.fragmentation());
+                for (int step = 0; step < 5; step++) {
+                    sim.run(1000);
+                    curve.add(alone.fragmentation());
+                }
+                StrategyRunner.Result result = results.get(strategy);
+                assertEquals(alone, result.getMemory());
+                assertEquals(sim.getExceptions(), result.getExceptions());
+                assertEquals(6, result.getFragmentation().length);
+                for (int point = 0; point < 6; point++) {
+                    assertEquals(curve.get(point), result.getFragmentation()[point], 1e-12);
+                }
+                assertEquals(0, result.getSimulation().getInstructions().size());
+            }
+            // the trace and the memory given to the runner are only read.
+            assertEquals(5000, trace.remaining());
+            assertEquals(Collections.singleton(new ProcessInterval(100, 999)), memory.freeSlots());
+        }
+    }
+
+    @Test
+    void mappedSnapshotTest(@TempDir Path folder) throws IOException {
+        Path file = folder.resolve("memory.bin");
+        MemoryImpl memory = new MemoryImpl(20, file);
+        memory.AllocateBlock(1, 5, StrategyType.FIRST_FIT);
+        MemoryImpl snapshot = memory.snapshot();
+        // the original changes first, the file must still follow it and not the snapshot.
+        memory.AllocateBlock(2, 5, StrategyType.FIRST_FIT);
+        snapshot.AllocateBlock(3, 7, StrategyType.FIRST_FIT);
+
+        assertEquals(new ProcessInterval(5, 9), memory.getProcessInterval(2));
+        assertEquals(new ProcessInterval(5, 11), snapshot.getProcessInterval(3));
+        assertNull(memory.getProcessInterval(3));
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        for (int address = 0; address < 20; address++) {
+            boolean taken = (buffer.get(8 + address / 8) & (1 << (address % 8))) != 0;
+            assertEquals(address <= 9, taken);
+            if (taken) {
+                assertEquals(address <= 4 ? 1 : 2, buffer.getInt(16 + 4 * address));
+            }
+        }
+        // the snapshot is in a file of its own, deleted when it is closed.
+        snapshot.close();
+        memory.close();
+        try (java.util.stream.Stream<Path> files = Files.list(folder)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void unclosedTraceTest(@TempDir Path folder) {
+        Path file = folder.resolve("trace.bin");
+        // a writer that is never closed leaves a trace with no instruction, but still a trace.
+        TraceWriter writer = new TraceWriter(file);
+        writer.writeAllocation(1, 10);
+        try (MappedTraceReader reader = new MappedTraceReader(file)) {
+            assertEquals(-1, reader.remaining());
+            assertFalse(reader.hasNext());
+        }
+        writer.close();
+        try (MappedTraceReader reader = new MappedTraceReader(file)) {
+            assertEquals(1, reader.remaining());
+            assertEquals(10, reader.dimension());
+        }
+    }
+
+    @Test
+    void forkCloseTest(@TempDir Path folder) {
+        Path file = folder.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(file)) {
+            writer.writeAllocation(1, 10);
+            writer.writeAllocation(2, 5);
+            writer.writeDeallocation(1);
+            writer.writeAllocation(3, 4);
+            writer.writeCompaction();
+        }
+        try (SimulationInstanceImpl simulation = new SimulationInstanceImpl(new MappedTraceReader(file),
+                new MemoryImpl(20), StrategyType.FIRST_FIT)) {
+            simulation.run(2);
+            try (SimulationInstanceImpl fork = simulation.fork(StrategyType.FIRST_FIT)) {
+                fork.runAll();
+                simulation.runAll();
+                assertEquals(simulation.getMemory(), fork.getMemory());
+            }
+        }
+        // the fork reads its own copy of the source, closing it does not close the one of the simulation.
+        int[] open = new int[1];
+        InstructionStream trace = new InstructionStream();
+        trace.addAllocation(1, 10);
+        trace.addDeallocation(1);
+        SimulationInstanceImpl simulation = new SimulationInstanceImpl(new CountingSource(trace, open),
+                new MemoryImpl(20), StrategyType.FIRST_FIT);
+        SimulationInstanceImpl fork = simulation.fork(StrategyType.FIRST_FIT);
+        assertEquals(2, open[0]);
+        fork.close();
+        assertEquals(1, open[0]);
+        simulation.runAll();
+        assertTrue(simulation.getExceptions().isEmpty());
+        simulation.close();
+        assertEquals(0, open[0]);
+    }
+
+    @Test
+    void mappedRunnerTest(@TempDir Path folder) {
+        Random random = new Random(11);
+        InstructionStream trace = new InstructionStream();
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextInt(3) == 0) {
+                trace.addDeallocation(random.nextInt(i + 1));
+            } else {
+                trace.addAllocation(i, random.nextInt(40) + 1);
+            }
+        }
+        Path file = folder.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(file)) {
+            writer.writeAll(trace.copy());
+        }
+        Map<StrategyType, StrategyRunner.Result> expected = new StrategyRunner(trace, new MemoryImpl(1000))
+            .run(EnumSet.allOf(StrategyType.class), 500);
+        try (MappedTraceReader reader = new MappedTraceReader(file)) {
+            Map<StrategyType, StrategyRunner.Result> results = new StrategyRunner(reader, new MemoryImpl(1000))
+                .run(EnumSet.allOf(StrategyType.class), 500);
+            for (StrategyType strategy : StrategyType.values()) {
+                assertEquals(expected.get(strategy).getMemory(), results.get(strategy).getMemory());
+                assertEquals(expected.get(strategy).getExceptions(), results.get(strategy).getExceptions());
+            }
+            // the reader given to the runner is still open and on its first instruction.
+            assertEquals(2000, reader.remaining());
+            assertEquals(trace.dimension(), reader.dimension());
+        }
+        // every copy made by the runner is closed when it returns.
+        int[] open = new int[1];
+        new StrategyRunner(new CountingSource(trace, open), new MemoryImpl(1000))
+            .run(EnumSet.allOf(StrategyType.class), 500);
+        assertEquals(1, open[0]);
+    }
+
+    /**
+     * The off heap cells are split in chunks of 2^28 cells, the blocks across two chunks are written and moved in bulk.
+     */
+    @Test
+    void offHeapChunksTest() {
+        int chunk = 1 << 28;
+        MemoryImpl memory = new MemoryImpl(chunk + 100, BackendType.OFF_HEAP);
+        assertTrue(memory.AllocateBlock(1, chunk - 50, StrategyType.FIRST_FIT));
+        assertTrue(memory.AllocateBlock(2, 100, StrategyType.FIRST_FIT));
+        assertEquals(Collections.singleton(1), memory.neighboringProcesses(2));
+        assertTrue(memory.unAllocate(1));
+        assertEquals(100, memory.compact());
+        assertEquals(new ProcessInterval(0, 99), memory.getProcessInterval(2));
+        assertTrue(memory.AllocateBlock(3, 1, StrategyType.FIRST_FIT));
+        // the cells moved down from the second chunk to the first one keep their owner.
+        assertEquals(Collections.singleton(3), memory.neighboringProcesses(2));
+    }
+
+    /**
+     * The snapshot of a memory mapped in a file bigger than a direct buffer is mapped too, and only its taken
+     * addresses are copied.
+     */
+    @Test
+    void bigMappedSnapshotTest(@TempDir Path folder) {
+        int size = 600_000_000;
+        try (MemoryImpl memory = new MemoryImpl(size, folder.resolve("memory.bin"))) {
+            memory.AllocateBlock(1, 10, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(2, 550_000_000, StrategyType.FIRST_FIT);
+            memory.AllocateBlock(3, 100, StrategyType.FIRST_FIT);
+            memory.unAllocate(2);
+            try (MemoryImpl snapshot = memory.snapshot()) {
+                assertEquals(memory, snapshot);
+                memory.compact();
+                assertEquals(new ProcessInterval(10, 109), memory.getProcessInterval(3));
+                assertEquals(new ProcessInterval(550_000_010, 550_000_109), snapshot.getProcessInterval(3));
+                // the owners of the last chunk were copied with the block.
+                assertEquals(Collections.singleton(1), memory.neighboringProcesses(3));
+                assertEquals(Collections.emptySet(), snapshot.neighboringProcesses(3));
+                snapshot.AllocateBlock(4, size - 550_000_110, StrategyType.BEST_FIT);
+                assertEquals(Collections.singleton(4), snapshot.neighboringProcesses(3));
+            }
+        }
+    }
+
+    @Test
+    void failedStrategyTest() {
+        InstructionStream trace = new InstructionStream();
+        for (int i = 0; i < 300; i++) {
+            trace.addAllocation(i, 1);
+        }
+        // the copy of the first strategy fails, the others are slow: they still read their copy meanwhile.
+        int[] state = new int[3];
+        StrategyRunner runner = new StrategyRunner(new SlowSource(trace, state), new MemoryImpl(1000));
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+            () -> runner.run(EnumSet.allOf(StrategyType.class), 10));
+        assertEquals("The copy failed", failure.getCause().getMessage());
+        // every copy is closed, and none was read once closed.
+        assertEquals(1, state[0]);
+        assertEquals(0, state[2]);
+    }
+
+    @Test
+    void sourceQueueTest(@TempDir Path folder) {
+        Path file = folder.resolve("trace.bin");
+        try (TraceWriter writer = new TraceWriter(file)) {
+            writer.writeAllocation(1, 10);
+            writer.writeDeallocation(1);
+            writer.writeCompaction();
+        }
+        try (SimulationInstanceImpl sim = new SimulationInstanceImpl(new MappedTraceReader(file), new MemoryImpl(20),
+                StrategyType.FIRST_FIT)) {
+            Queue<Instruction> instructions = sim.getInstructions();
+            assertEquals(3, instructions.size());
+            assertEquals("[A(1, 10), D(1), C]", instructions.toString());
+            // the queue is iterated on a copy, the instructions are still there to run.
+            sim.run(1);
+            assertEquals("[D(1), C]", new ArrayList<>(instructions).toString());
+        }
+        // the copy read by the iterator is closed at its end.
+        int[] open = new int[1];
+        InstructionStream trace = new InstructionStream();
+        trace.addAllocation(1, 10);
+        Queue<Instruction> instructions = new CountingSource(trace, open).asQueue();
+        assertEquals("[A(1, 10)]", new ArrayList<>(instructions).toString());
+        assertEquals(1, open[0]);
+        assertEquals(1, instructions.size());
+    }
+
+    /**
+     * A source in memory that counts how many of its copies are open, like a file opened once per copy.
+     */
+    private static final class CountingSource implements InstructionSource, Closeable {
+
+        private final InstructionStream stream;
+        private final int[] open;
+
+        CountingSource(InstructionStream stream, int[] open) {
+            this.stream = stream;
+            this.open = open;
+            open[0] = open[0] + 1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return stream.hasNext();
+        }
+
+        @Override
+        public int opcode() {
+            return stream.opcode();
+        }
+
+        @Override
+        public int processId() {
+            return stream.processId();
+        }
+
+        @Override
+        public int dimension() {
+            return stream.dimension();
+        }
+
+        @Override
+        public void advance() {
+            stream.advance();
+        }
+
+        @Override
+        public long remaining() {
+            return stream.remaining();
+        }
+
+        @Override
+        public CountingSource copy() {
+            return new CountingSource(stream.copy(), open);
+        }
+
+        @Override
+        public void close() {
+            open[0] = open[0] - 1;
+        }
+    }
+
+    /**
+     * A source in memory where the first copy fails at its first instruction and the others take 1 ms per
+     * instruction. state[0] counts the sources open, state[1] the copies made and state[2] the reads of a closed one.
+     */
+    private static final class SlowSource implements InstructionSource, Closeable {
+
+        private final InstructionStream stream;
+        private final int[] state;
+        private final boolean failing;
+        private volatile boolean closed;
+
+        SlowSource(InstructionStream stream, int[] state) {
+            this(stream, state, false);
+        }
+
+        private SlowSource(InstructionStream stream, int[] state, boolean failing) {
+            this.stream = stream;
+            this.state = state;
+            this.failing = failing;
+            synchronized (state) {
+                state[0] = state[0] + 1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            read();
+            return stream.hasNext();
+        }
+
+        @Override
+        public int opcode() {
+            read();
+            return stream.opcode();
+        }
+
+        @Override
+        public int processId() {
+            read();
+            return stream.processId();
+        }
+
+        @Override
+        public int dimension() {
+            read();
+            return stream.dimension();
+        }
+
+        @Override
+        public void advance() {
+            read();
+            if (failing) {
+                throw new IllegalStateException("The copy failed");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                // like a read from a file, it can not be stopped.
+                Thread.currentThread().interrupt();
+            }
+            stream.advance();
+        }
+
+        @Override
+        public SlowSource copy() {
+            synchronized (state) {
+                state[1] = state[1] + 1;
+                return new SlowSource(stream.copy(), state, state[1] == 1);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            synchronized (state) {
+                state[0] = state[0] - 1;
+            }
+        }
+
+        private void read() {
+            if (closed) {
+                synchronized (state) {
+                    state[2] = state[2] + 1;
+                }
+            }
+        }
+    }
+}